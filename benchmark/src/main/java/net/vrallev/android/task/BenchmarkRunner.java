@@ -0,0 +1,87 @@
+package net.vrallev.android.task;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.NoBenchmarksException;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Runs all benchmarks with 1 to 16 threads and writes one JSON file per thread count, the registry benchmark
+ * uses its own fixed thread groups. The target method finder benchmark only runs with one thread, because the
+ * lookups are restricted to the main thread. The GC profiler adds the allocation rate to each result.
+ *
+ * <pre>
+ * ./gradlew :benchmark:jmh [-PjmhInclude=TargetMethodFinder]
+ * </pre>
+ *
+ * @author rwondratschek
+ */
+public final class BenchmarkRunner {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    private BenchmarkRunner() {
+        // no op
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        File outputDir = new File(args.length > 0 ? args[0] : "build/reports/jmh");
+        String include = args.length > 1 ? args[1] : ".*";
+
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IllegalStateException("Couldn't create " + outputDir);
+        }
+
+        String pattern = BenchmarkRunner.class.getPackage().getName() + ".*" + include + ".*";
+
+        try {
+            for (int threads : THREADS) {
+                new Runner(createOptions(new File(outputDir, "threads-" + threads + ".json"))
+                        .include(pattern)
+                        .exclude(RegistryBenchmark.class.getSimpleName())
+                        .exclude(TargetMethodFinderBenchmark.class.getSimpleName())
+                        .threads(threads)
+                        .build()).run();
+            }
+        } catch (NoBenchmarksException e) {
+            // only the registry benchmark was selected
+        }
+
+        try {
+            // only the benchmarks of this class, which match the pattern
+            new Runner(createOptions(new File(outputDir, "main-thread.json"))
+                    .include("^(?=" + pattern + ")" + Pattern.quote(TargetMethodFinderBenchmark.class.getName()) + "\\..*")
+                    .threads(1)
+                    .build()).run();
+        } catch (NoBenchmarksException e) {
+            // not selected
+        }
+
+        if ((RegistryBenchmark.class.getName() + ".registry").matches(pattern)) {
+            new Runner(createOptions(new File(outputDir, "registry.json"))
+                    .include(RegistryBenchmark.class.getName())
+                    .build()).run();
+        }
+    }
+
+    private static ChainedOptionsBuilder createOptions(File result) {
+        return new OptionsBuilder()
+                .forks(1)
+                .warmupIterations(5)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result.getAbsolutePath());
+    }
+}
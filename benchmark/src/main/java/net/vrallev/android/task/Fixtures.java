@@ -0,0 +1,177 @@
+package net.vrallev.android.task;
+
+import android.app.Application;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Callback classes and tasks shaped like a typical app: the callbacks extend base classes declaring other
+ * {@link TaskResult} methods and the target fragment is the last leaf of a fragment tree, so that the search
+ * visits every fragment.
+ *
+ * @author rwondratschek
+ */
+@SuppressWarnings("unused")
+public final class Fixtures {
+
+    /*package*/ static final int FRAGMENTS_PER_LEVEL = 4;
+    /*package*/ static final int FRAGMENT_LEVELS = 3;
+
+    private Fixtures() {
+        // no op
+    }
+
+    /*package*/ static final class Environment {
+
+        /*package*/ final Application mApplication;
+        /*package*/ final CallbackActivity mActivity;
+        /*package*/ final Fragment mTargetFragment;
+        /*package*/ final Fragment mOtherFragment;
+
+        /*package*/ Environment() {
+            this(false);
+        }
+
+        /**
+         * @param indexFragments Whether the fragments are tracked in a {@link FragmentIndex} like for an activity
+         *                       created after the {@link TaskExecutor}.
+         */
+        /*package*/ Environment(boolean indexFragments) {
+            mApplication = new Application();
+            mActivity = new CallbackActivity();
+            mActivity.attach(mApplication);
+            mApplication.dispatchActivityCreated(mActivity, null);
+            mApplication.dispatchActivityStarted(mActivity);
+
+            if (indexFragments) {
+                FragmentIndex.register(mActivity);
+            }
+
+            addFragments(mActivity.getSupportFragmentManager(), 1, "");
+
+            Fragment target = null;
+            Fragment other = null;
+            FragmentManager fragmentManager = mActivity.getSupportFragmentManager();
+            while (!fragmentManager.getFragments().isEmpty()) {
+                int size = fragmentManager.getFragments().size();
+                other = fragmentManager.getFragments().get(size - 2);
+                target = fragmentManager.getFragments().get(size - 1);
+                fragmentManager = target.getChildFragmentManager();
+            }
+
+            mTargetFragment = target;
+            mOtherFragment = other;
+        }
+
+        private static void addFragments(FragmentManager fragmentManager, int level, String path) {
+            for (int i = 0; i < FRAGMENTS_PER_LEVEL; i++) {
+                boolean leaf = level == FRAGMENT_LEVELS;
+                Fragment fragment = leaf && i == FRAGMENTS_PER_LEVEL - 1 ? new CallbackFragment() : new ContainerFragment();
+                String tag = path + i;
+
+                fragmentManager.addFragment(fragment, level * 100 + i, "fragment-" + tag);
+                if (!leaf) {
+                    addFragments(fragment.getChildFragmentManager(), level + 1, tag + '-');
+                }
+            }
+        }
+    }
+
+    public static class BaseActivity extends FragmentActivity {
+
+        @TaskResult
+        public void onLongResult(Long result) {
+        }
+
+        @TaskResult(id = "other")
+        public void onOtherStringResult(String result) {
+        }
+    }
+
+    public static class CallbackActivity extends BaseActivity {
+
+        @TaskResult
+        public void onBooleanResult(Boolean result) {
+        }
+
+        @TaskResult
+        public void onStringResult(String result) {
+        }
+
+        @TaskResult
+        public void onDeliveryResult(DeliveryResult result, DeliveryTask task) {
+            task.mDelivered.countDown();
+        }
+
+        @TaskProgress
+        public void onProgress(Integer progress) {
+        }
+    }
+
+    public static class BaseFragment extends Fragment {
+
+        @TaskResult
+        public void onLongResult(Long result) {
+        }
+    }
+
+    public static class ContainerFragment extends BaseFragment {
+
+        @TaskResult(id = "container")
+        public void onIntegerResult(Integer result) {
+        }
+    }
+
+    public static class CallbackFragment extends BaseFragment {
+
+        @TaskResult
+        public void onIntegerResult(Integer result) {
+        }
+    }
+
+    public static class StringTask extends Task<String> {
+
+        @Override
+        protected String execute() {
+            return "result";
+        }
+    }
+
+    public static class IntegerTask extends Task<Integer> {
+
+        @Override
+        protected Integer execute() {
+            return 42;
+        }
+    }
+
+    public static final class DeliveryResult {
+    }
+
+    public static class DeliveryTask extends Task<DeliveryResult> {
+
+        private static final DeliveryResult RESULT = new DeliveryResult();
+
+        private final CountDownLatch mDelivered = new CountDownLatch(1);
+
+        @Override
+        protected DeliveryResult execute() {
+            return RESULT;
+        }
+
+        /*package*/ void awaitDelivery() throws InterruptedException {
+            mDelivered.await();
+        }
+    }
+
+    public static class EmptyTask extends TaskNoCallback {
+
+        @Override
+        protected void executeTask() {
+            // no op
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package net.vrallev.android.task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * @author rwondratschek
+ */
+@State(Scope.Benchmark)
+public class FragmentIdBenchmark {
+
+    private Fixtures.Environment mEnvironment;
+    private FragmentId mTargetId;
+    private FragmentId mTargetIdCopy;
+
+    @Setup
+    public void setUp() {
+        mEnvironment = new Fixtures.Environment();
+        mTargetId = FragmentIdHelper.getFragmentId(mEnvironment.mTargetFragment);
+        mTargetIdCopy = FragmentIdHelper.getFragmentId(mEnvironment.mTargetFragment);
+    }
+
+    @Benchmark
+    public Object getFragmentId() {
+        return FragmentIdHelper.getFragmentId(mEnvironment.mTargetFragment);
+    }
+
+    @Benchmark
+    public boolean matchesTarget() {
+        return FragmentIdHelper.matches(mTargetId, mEnvironment.mTargetFragment, true);
+    }
+
+    @Benchmark
+    public boolean matchesOther() {
+        return FragmentIdHelper.matches(mTargetId, mEnvironment.mOtherFragment, true);
+    }
+
+    @Benchmark
+    public boolean equalsWithIndex() {
+        return mTargetId.equals(mTargetIdCopy, true);
+    }
+}
@@ -0,0 +1,50 @@
+package net.vrallev.android.task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the per-class {@link MethodIndex} behind {@link TargetMethodFinder} in isolation. A hit and a miss
+ * are answered from the index of a class, which was scanned before, a scan indexes a class from scratch.
+ *
+ * @author rwondratschek
+ */
+@State(Scope.Benchmark)
+public class MethodIndexBenchmark {
+
+    private static final Class<?>[] TARGETS = {
+            Fixtures.CallbackActivity.class,
+            Fixtures.BaseActivity.class,
+            Fixtures.CallbackFragment.class,
+            Fixtures.ContainerFragment.class,
+            Fixtures.BaseFragment.class
+    };
+
+    private Task<String> mTask;
+
+    @Setup
+    public void setUp() {
+        mTask = new Fixtures.StringTask();
+
+        for (Class<?> target : TARGETS) {
+            MethodIndex.forClass(target);
+        }
+    }
+
+    @Benchmark
+    public Object indexHit() {
+        return MethodIndex.forClass(Fixtures.CallbackFragment.class).find(TaskResult.class, null, Integer.class, mTask.getClass());
+    }
+
+    @Benchmark
+    public Object indexMiss() {
+        return MethodIndex.forClass(Fixtures.CallbackFragment.class).find(TaskResult.class, null, Double.class, mTask.getClass());
+    }
+
+    @Benchmark
+    public Object scan() {
+        return MethodIndex.create(Fixtures.CallbackActivity.class);
+    }
+}
@@ -0,0 +1,60 @@
+package net.vrallev.android.task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares invoking a resolved callback with reflection and through a dispatcher, like the one the annotation
+ * processor generates. The benchmark threads aren't the main thread, so the reflection path allocates its
+ * arguments like a delivery with {@code PostResult.IMMEDIATELY}.
+ *
+ * @author rwondratschek
+ */
+@State(Scope.Benchmark)
+public class MethodInvokerBenchmark {
+
+    private Fixtures.CallbackActivity mActivity;
+    private Fixtures.DeliveryTask mTask;
+    private Fixtures.DeliveryResult mResult;
+
+    private MethodInvoker mReflectionResultOnly;
+    private MethodInvoker mReflectionWithTask;
+    private MethodInvoker mDispatcherWithTask;
+
+    @Setup
+    public void setUp() throws Exception {
+        mActivity = new Fixtures.CallbackActivity();
+        mTask = new Fixtures.DeliveryTask();
+        mResult = new Fixtures.DeliveryResult();
+
+        mReflectionResultOnly = MethodInvoker.forMethod(Fixtures.CallbackActivity.class.getMethod("onStringResult", String.class));
+        mReflectionWithTask = MethodInvoker.forMethod(Fixtures.CallbackActivity.class.getMethod("onDeliveryResult",
+                Fixtures.DeliveryResult.class, Fixtures.DeliveryTask.class));
+
+        TaskResultDispatcher dispatcher = new TaskResultDispatcher(new Class<?>[]{TaskResult.class}, new String[]{""},
+                new Class<?>[]{Fixtures.DeliveryResult.class}, new Class<?>[]{Fixtures.DeliveryTask.class}) {
+            @Override
+            protected void dispatch(Object target, int index, Object result, Task<?> task) {
+                ((Fixtures.CallbackActivity) target).onDeliveryResult((Fixtures.DeliveryResult) result, (Fixtures.DeliveryTask) task);
+            }
+        };
+        mDispatcherWithTask = MethodInvoker.forDispatcher(dispatcher, 0);
+    }
+
+    @Benchmark
+    public void reflectionResultOnly() {
+        mReflectionResultOnly.invoke(mActivity, "result", mTask);
+    }
+
+    @Benchmark
+    public void reflectionWithTask() {
+        mReflectionWithTask.invoke(mActivity, mResult, mTask);
+    }
+
+    @Benchmark
+    public void dispatcherWithTask() {
+        mDispatcherWithTask.invoke(mActivity, mResult, mTask);
+    }
+}
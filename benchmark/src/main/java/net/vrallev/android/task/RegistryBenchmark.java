@@ -0,0 +1,51 @@
+package net.vrallev.android.task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Eight threads submit tasks, while one thread reads the registry like the UI thread restoring its tasks. The
+ * reader shouldn't slow down, when more tasks are submitted.
+ *
+ * @author rwondratschek
+ */
+@State(Scope.Group)
+public class RegistryBenchmark {
+
+    private Fixtures.Environment mEnvironment;
+    private TaskExecutor mTaskExecutor;
+    private volatile int mLastKey;
+
+    @Setup
+    public void setUp() {
+        mEnvironment = new Fixtures.Environment();
+        mTaskExecutor = new TaskExecutor.Builder().build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mTaskExecutor.shutdown();
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(8)
+    public Object submit() {
+        Task<Void> task = new Fixtures.EmptyTask();
+        mLastKey = mTaskExecutor.execute(task, mEnvironment.mActivity);
+        return task.getResult();
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(1)
+    public int read() {
+        Task<?> task = mTaskExecutor.getTask(mLastKey);
+        return mTaskExecutor.getAllTasks(Fixtures.EmptyTask.class).size() + (task == null ? 0 : 1);
+    }
+}
@@ -0,0 +1,72 @@
+package net.vrallev.android.task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Resolves the callback of a task like {@link TaskExecutor} does before delivering a result. The lookups and the
+ * {@link FragmentIndex} may only be used on the main thread, so each benchmark thread builds its own fixtures and
+ * uses them alone, standing in for the main thread. {@link BenchmarkRunner} runs this benchmark with one thread.
+ *
+ * @author rwondratschek
+ */
+@State(Scope.Thread)
+public class TargetMethodFinderBenchmark {
+
+    @Param({"tree", "index"})
+    public String mLookup;
+
+    private Fixtures.Environment mEnvironment;
+    private TargetMethodFinder mTargetMethodFinder;
+    private TargetMethodFinder mProgressMethodFinder;
+
+    private Task<String> mActivityTask;
+    private Task<Integer> mFragmentTask;
+    private Task<Integer> mShiftedFragmentTask;
+
+    @Setup
+    public void setUp() {
+        mEnvironment = new Fixtures.Environment("index".equals(mLookup));
+        mTargetMethodFinder = new TargetMethodFinder(TaskResult.class);
+        mProgressMethodFinder = new TargetMethodFinder(TaskProgress.class);
+
+        mActivityTask = new Fixtures.StringTask();
+        mFragmentTask = new Fixtures.IntegerTask();
+        mFragmentTask.setFragmentId(FragmentIdHelper.getFragmentId(mEnvironment.mTargetFragment));
+
+        // same ID and tag, but the indices shifted like after a configuration change
+        FragmentId fragmentId = FragmentIdHelper.getFragmentId(mEnvironment.mTargetFragment);
+        int[] indexPath = fragmentId.getIndexPath().clone();
+        indexPath[indexPath.length - 1]++;
+        mShiftedFragmentTask = new Fixtures.IntegerTask();
+        mShiftedFragmentTask.setFragmentId(new FragmentId(indexPath, fragmentId.getId(), fragmentId.getTag()));
+    }
+
+    @Benchmark
+    public Object activityTarget() {
+        return mTargetMethodFinder.getMethod(mEnvironment.mActivity, String.class, mActivityTask);
+    }
+
+    @Benchmark
+    public Object nestedFragmentTarget() {
+        return mTargetMethodFinder.getMethod(mEnvironment.mActivity, Integer.class, mFragmentTask);
+    }
+
+    @Benchmark
+    public Object shiftedFragmentTarget() {
+        return mTargetMethodFinder.getMethod(mEnvironment.mActivity, Integer.class, mShiftedFragmentTask);
+    }
+
+    @Benchmark
+    public Object progressTarget() {
+        return mProgressMethodFinder.getMethod(mEnvironment.mActivity, Integer.class, mActivityTask);
+    }
+
+    @Benchmark
+    public Object resultType() {
+        return mTargetMethodFinder.getResultType("result", mActivityTask);
+    }
+}
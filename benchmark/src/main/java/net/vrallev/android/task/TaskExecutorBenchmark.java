@@ -0,0 +1,55 @@
+package net.vrallev.android.task;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Round trips through the executor. Each operation waits for its task, so that the queue can't grow without
+ * bounds, and the score is the throughput of submitting, running and cleaning up a task.
+ *
+ * @author rwondratschek
+ */
+@State(Scope.Benchmark)
+public class TaskExecutorBenchmark {
+
+    @Param({"cached", "bounded"})
+    public String mPool;
+
+    private Fixtures.Environment mEnvironment;
+    private TaskExecutor mTaskExecutor;
+
+    @Setup
+    public void setUp() {
+        mEnvironment = new Fixtures.Environment();
+
+        TaskExecutor.Builder builder = new TaskExecutor.Builder();
+        if ("bounded".equals(mPool)) {
+            builder.setWorkerCount(Runtime.getRuntime().availableProcessors());
+        }
+        mTaskExecutor = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mTaskExecutor.shutdown();
+    }
+
+    @Benchmark
+    public Object executeWithoutCallback() {
+        Task<Void> task = new Fixtures.EmptyTask();
+        mTaskExecutor.execute(task, mEnvironment.mActivity);
+        return task.getResult();
+    }
+
+    @Benchmark
+    public Object executeAndDeliver() throws InterruptedException {
+        Fixtures.DeliveryTask task = new Fixtures.DeliveryTask();
+        mTaskExecutor.execute(task, mEnvironment.mActivity);
+        task.awaitDelivery();
+        return task;
+    }
+}
@@ -0,0 +1,50 @@
+package android.app;
+
+import android.content.Context;
+
+/**
+ * @author rwondratschek
+ */
+public class Activity extends Context {
+
+    private Application mApplication;
+    private FragmentManager mFragmentManager;
+    private boolean mFinishing;
+
+    /*package*/ volatile boolean mStateSaved;
+
+    /**
+     * Hidden in the framework, replaces the system attaching a new activity.
+     */
+    public final void attach(Application application) {
+        mApplication = application;
+    }
+
+    public final Application getApplication() {
+        return mApplication;
+    }
+
+    @Override
+    public Context getApplicationContext() {
+        return mApplication;
+    }
+
+    public FragmentManager getFragmentManager() {
+        if (mFragmentManager == null) {
+            mFragmentManager = new FragmentManager(this);
+        }
+        return mFragmentManager;
+    }
+
+    public boolean isFinishing() {
+        return mFinishing;
+    }
+
+    public void finish() {
+        mFinishing = true;
+    }
+
+    public boolean isChangingConfigurations() {
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+package android.app;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code dispatch} methods are hidden in the framework. They are public here, so that benchmarks can drive
+ * the activity life cycle.
+ *
+ * @author rwondratschek
+ */
+public class Application extends Context {
+
+    public interface ActivityLifecycleCallbacks {
+        void onActivityCreated(Activity activity, Bundle savedInstanceState);
+
+        void onActivityStarted(Activity activity);
+
+        void onActivityResumed(Activity activity);
+
+        void onActivityPaused(Activity activity);
+
+        void onActivityStopped(Activity activity);
+
+        void onActivitySaveInstanceState(Activity activity, Bundle outState);
+
+        void onActivityDestroyed(Activity activity);
+    }
+
+    private final List<ActivityLifecycleCallbacks> mCallbacks = new ArrayList<>();
+
+    public void registerActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback) {
+        synchronized (mCallbacks) {
+            mCallbacks.add(callback);
+        }
+    }
+
+    public void unregisterActivityLifecycleCallbacks(ActivityLifecycleCallbacks callback) {
+        synchronized (mCallbacks) {
+            mCallbacks.remove(callback);
+        }
+    }
+
+    public void dispatchActivityCreated(Activity activity, Bundle savedInstanceState) {
+        activity.mStateSaved = false;
+        for (ActivityLifecycleCallbacks callback : getCallbacks()) {
+            callback.onActivityCreated(activity, savedInstanceState);
+        }
+    }
+
+    public void dispatchActivityStarted(Activity activity) {
+        activity.mStateSaved = false;
+        for (ActivityLifecycleCallbacks callback : getCallbacks()) {
+            callback.onActivityStarted(activity);
+        }
+    }
+
+    public void dispatchActivityResumed(Activity activity) {
+        for (ActivityLifecycleCallbacks callback : getCallbacks()) {
+            callback.onActivityResumed(activity);
+        }
+    }
+
+    public void dispatchActivityPaused(Activity activity) {
+        for (ActivityLifecycleCallbacks callback : getCallbacks()) {
+            callback.onActivityPaused(activity);
+        }
+    }
+
+    public void dispatchActivityStopped(Activity activity) {
+        for (ActivityLifecycleCallbacks callback : getCallbacks()) {
+            callback.onActivityStopped(activity);
+        }
+    }
+
+    public void dispatchActivitySaveInstanceState(Activity activity, Bundle outState) {
+        activity.mStateSaved = true;
+        for (ActivityLifecycleCallbacks callback : getCallbacks()) {
+            callback.onActivitySaveInstanceState(activity, outState);
+        }
+    }
+
+    public void dispatchActivityDestroyed(Activity activity) {
+        for (ActivityLifecycleCallbacks callback : getCallbacks()) {
+            callback.onActivityDestroyed(activity);
+        }
+    }
+
+    private ActivityLifecycleCallbacks[] getCallbacks() {
+        synchronized (mCallbacks) {
+            return mCallbacks.toArray(new ActivityLifecycleCallbacks[mCallbacks.size()]);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package android.app;
+
+/**
+ * @author rwondratschek
+ */
+public class Fragment {
+}
@@ -0,0 +1,17 @@
+package android.app;
+
+/**
+ * @author rwondratschek
+ */
+public class FragmentManager {
+
+    private final Activity mActivity;
+
+    /*package*/ FragmentManager(Activity activity) {
+        mActivity = activity;
+    }
+
+    public FragmentTransaction beginTransaction() {
+        return new FragmentTransaction(mActivity);
+    }
+}
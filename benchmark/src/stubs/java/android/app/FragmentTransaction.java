@@ -0,0 +1,30 @@
+package android.app;
+
+/**
+ * Only checks the state like the framework, fragments aren't attached.
+ *
+ * @author rwondratschek
+ */
+public class FragmentTransaction {
+
+    private final Activity mActivity;
+
+    /*package*/ FragmentTransaction(Activity activity) {
+        mActivity = activity;
+    }
+
+    public FragmentTransaction add(Fragment fragment, String tag) {
+        return this;
+    }
+
+    public FragmentTransaction remove(Fragment fragment) {
+        return this;
+    }
+
+    public int commit() {
+        if (mActivity.mStateSaved) {
+            throw new IllegalStateException("Can not perform this action after onSaveInstanceState");
+        }
+        return 0;
+    }
+}
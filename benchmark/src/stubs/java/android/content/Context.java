@@ -0,0 +1,17 @@
+package android.content;
+
+import java.io.File;
+
+/**
+ * @author rwondratschek
+ */
+public class Context {
+
+    public Context getApplicationContext() {
+        return this;
+    }
+
+    public File getFilesDir() {
+        return new File(System.getProperty("java.io.tmpdir"), "android-task-benchmark");
+    }
+}
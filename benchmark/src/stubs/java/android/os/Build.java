@@ -0,0 +1,37 @@
+package android.os;
+
+/**
+ * @author rwondratschek
+ */
+public final class Build {
+
+    private Build() {
+        // no op
+    }
+
+    public static final class VERSION {
+
+        public static final int SDK_INT = VERSION_CODES.O;
+
+        private VERSION() {
+            // no op
+        }
+    }
+
+    public static final class VERSION_CODES {
+
+        public static final int ICE_CREAM_SANDWICH = 14;
+        public static final int JELLY_BEAN = 16;
+        public static final int JELLY_BEAN_MR1 = 17;
+        public static final int JELLY_BEAN_MR2 = 18;
+        public static final int KITKAT = 19;
+        public static final int LOLLIPOP = 21;
+        public static final int M = 23;
+        public static final int N = 24;
+        public static final int O = 26;
+
+        private VERSION_CODES() {
+            // no op
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package android.os;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.DelayQueue;
+
+/**
+ * Runs posted messages on one thread. The main looper is started lazily on a daemon thread named {@code main},
+ * which plays the role of the UI thread in the benchmarks.
+ *
+ * @author rwondratschek
+ */
+public final class Looper {
+
+    private static final ThreadLocal<Looper> LOOPER = new ThreadLocal<>();
+
+    private static Looper mainLooper;
+
+    public static synchronized Looper getMainLooper() {
+        if (mainLooper == null) {
+            mainLooper = startLooperThread("main");
+        }
+        return mainLooper;
+    }
+
+    public static Looper myLooper() {
+        return LOOPER.get();
+    }
+
+    private static Looper startLooperThread(String name) {
+        final Looper[] looper = new Looper[1];
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                looper[0] = new Looper(Thread.currentThread());
+                LOOPER.set(looper[0]);
+                latch.countDown();
+                looper[0].loop();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        return looper[0];
+    }
+
+    private final Thread mThread;
+    private final DelayQueue<Message> mQueue;
+
+    private Looper(Thread thread) {
+        mThread = thread;
+        mQueue = new DelayQueue<>();
+    }
+
+    public Thread getThread() {
+        return mThread;
+    }
+
+    /*package*/ void enqueue(Message message) {
+        mQueue.offer(message);
+    }
+
+    /*package*/ void remove(Handler handler, Runnable callback) {
+        Iterator<Message> iterator = mQueue.iterator();
+        while (iterator.hasNext()) {
+            Message message = iterator.next();
+            if (message.mHandler == handler && message.mCallback == callback) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private void loop() {
+        while (true) {
+            Message message;
+            try {
+                message = mQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                message.mCallback.run();
+            } catch (RuntimeException e) {
+                // the framework would crash the app, keep the benchmark running and make the failure visible
+                e.printStackTrace();
+            }
+        }
+    }
+}
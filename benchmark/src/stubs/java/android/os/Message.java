@@ -0,0 +1,41 @@
+package android.os;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A queued runnable. Messages with the same time run in the order they were posted.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class Message implements Delayed {
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /*package*/ final Handler mHandler;
+    /*package*/ final Runnable mCallback;
+    private final long mWhenNanos;
+    private final long mSequence;
+
+    /*package*/ Message(Handler handler, Runnable callback, long delayMillis) {
+        mHandler = handler;
+        mCallback = callback;
+        mWhenNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delayMillis, 0));
+        mSequence = SEQUENCE.incrementAndGet();
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(mWhenNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        Message message = (Message) other;
+        if (mWhenNanos != message.mWhenNanos) {
+            return mWhenNanos - message.mWhenNanos < 0 ? -1 : 1;
+        }
+        return mSequence < message.mSequence ? -1 : (mSequence == message.mSequence ? 0 : 1);
+    }
+}
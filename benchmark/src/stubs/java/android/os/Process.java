@@ -0,0 +1,18 @@
+package android.os;
+
+/**
+ * @author rwondratschek
+ */
+public class Process {
+
+    public static int myPid() {
+        return 0;
+    }
+
+    /**
+     * The JVM doesn't expose the kernel thread ID, the Java thread ID is unique as well.
+     */
+    public static int myTid() {
+        return (int) Thread.currentThread().getId();
+    }
+}
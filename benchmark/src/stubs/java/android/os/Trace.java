@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * @author rwondratschek
+ */
+public final class Trace {
+
+    private Trace() {
+        // no op
+    }
+
+    public static void beginSection(String sectionName) {
+        // no op
+    }
+
+    public static void endSection() {
+        // no op
+    }
+}
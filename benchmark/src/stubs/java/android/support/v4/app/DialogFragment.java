@@ -0,0 +1,7 @@
+package android.support.v4.app;
+
+/**
+ * @author rwondratschek
+ */
+public class DialogFragment extends Fragment {
+}
@@ -0,0 +1,49 @@
+package android.support.v4.app;
+
+/**
+ * @author rwondratschek
+ */
+public class Fragment {
+
+    private FragmentActivity mActivity;
+    private Fragment mParentFragment;
+    private FragmentManager mFragmentManager;
+    private FragmentManager mChildFragmentManager;
+    private int mFragmentId;
+    private String mTag;
+
+    /*package*/ final void attach(FragmentActivity activity, Fragment parent, FragmentManager fragmentManager, int id, String tag) {
+        mActivity = activity;
+        mParentFragment = parent;
+        mFragmentManager = fragmentManager;
+        mFragmentId = id;
+        mTag = tag;
+    }
+
+    public final FragmentActivity getActivity() {
+        return mActivity;
+    }
+
+    public final Fragment getParentFragment() {
+        return mParentFragment;
+    }
+
+    public final FragmentManager getFragmentManager() {
+        return mFragmentManager;
+    }
+
+    public final FragmentManager getChildFragmentManager() {
+        if (mChildFragmentManager == null) {
+            mChildFragmentManager = new FragmentManager(mActivity, this);
+        }
+        return mChildFragmentManager;
+    }
+
+    public final int getId() {
+        return mFragmentId;
+    }
+
+    public final String getTag() {
+        return mTag;
+    }
+}
@@ -0,0 +1,18 @@
+package android.support.v4.app;
+
+import android.app.Activity;
+
+/**
+ * @author rwondratschek
+ */
+public class FragmentActivity extends Activity {
+
+    private FragmentManager mFragmentManager;
+
+    public FragmentManager getSupportFragmentManager() {
+        if (mFragmentManager == null) {
+            mFragmentManager = new FragmentManager(this, null);
+        }
+        return mFragmentManager;
+    }
+}
@@ -0,0 +1,82 @@
+package android.support.v4.app;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author rwondratschek
+ */
+public class FragmentManager {
+
+    public abstract static class FragmentLifecycleCallbacks {
+
+        public void onFragmentAttached(FragmentManager fm, Fragment f, Context context) {
+        }
+
+        public void onFragmentDetached(FragmentManager fm, Fragment f) {
+        }
+    }
+
+    private final FragmentActivity mActivity;
+    private final Fragment mParent;
+    private final List<Fragment> mFragments;
+    private final List<FragmentLifecycleCallbacks> mCallbacks;
+    private final List<Boolean> mRecursive;
+
+    /*package*/ FragmentManager(FragmentActivity activity, Fragment parent) {
+        mActivity = activity;
+        mParent = parent;
+        mFragments = new ArrayList<>();
+        mCallbacks = new ArrayList<>();
+        mRecursive = new ArrayList<>();
+    }
+
+    public void registerFragmentLifecycleCallbacks(FragmentLifecycleCallbacks cb, boolean recursive) {
+        mCallbacks.add(cb);
+        mRecursive.add(recursive);
+    }
+
+    public void unregisterFragmentLifecycleCallbacks(FragmentLifecycleCallbacks cb) {
+        int index = mCallbacks.indexOf(cb);
+        if (index >= 0) {
+            mCallbacks.remove(index);
+            mRecursive.remove(index);
+        }
+    }
+
+    public List<Fragment> getFragments() {
+        return Collections.unmodifiableList(mFragments);
+    }
+
+    public Fragment findFragmentByTag(String tag) {
+        for (Fragment fragment : mFragments) {
+            if (tag != null && tag.equals(fragment.getTag())) {
+                return fragment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces a committed transaction, the fragment is added and attached right away.
+     */
+    public void addFragment(Fragment fragment, int id, String tag) {
+        fragment.attach(mActivity, mParent, this, id, tag);
+        mFragments.add(fragment);
+        dispatchAttached(this, fragment, false);
+    }
+
+    private void dispatchAttached(FragmentManager fm, Fragment fragment, boolean onlyRecursive) {
+        if (mParent != null) {
+            mParent.getFragmentManager().dispatchAttached(fm, fragment, true);
+        }
+        for (int i = 0; i < mCallbacks.size(); i++) {
+            if (!onlyRecursive || mRecursive.get(i)) {
+                mCallbacks.get(i).onFragmentAttached(fm, fragment, mActivity);
+            }
+        }
+    }
+}
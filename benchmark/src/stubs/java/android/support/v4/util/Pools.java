@@ -0,0 +1,82 @@
+package android.support.v4.util;
+
+/**
+ * @author rwondratschek
+ */
+public final class Pools {
+
+    private Pools() {
+        // no op
+    }
+
+    public interface Pool<T> {
+
+        T acquire();
+
+        boolean release(T instance);
+    }
+
+    public static class SimplePool<T> implements Pool<T> {
+
+        private final Object[] mPool;
+        private int mPoolSize;
+
+        public SimplePool(int maxPoolSize) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mPool = new Object[maxPoolSize];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T acquire() {
+            if (mPoolSize > 0) {
+                int lastPooledIndex = mPoolSize - 1;
+                T instance = (T) mPool[lastPooledIndex];
+                mPool[lastPooledIndex] = null;
+                mPoolSize--;
+                return instance;
+            }
+            return null;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            for (int i = 0; i < mPoolSize; i++) {
+                if (mPool[i] == instance) {
+                    throw new IllegalStateException("Already in the pool!");
+                }
+            }
+            if (mPoolSize < mPool.length) {
+                mPool[mPoolSize] = instance;
+                mPoolSize++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    public static class SynchronizedPool<T> extends SimplePool<T> {
+
+        private final Object mLock = new Object();
+
+        public SynchronizedPool(int maxPoolSize) {
+            super(maxPoolSize);
+        }
+
+        @Override
+        public T acquire() {
+            synchronized (mLock) {
+                return super.acquire();
+            }
+        }
+
+        @Override
+        public boolean release(T element) {
+            synchronized (mLock) {
+                return super.release(element);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package android.text;
+
+/**
+ * @author rwondratschek
+ */
+public final class TextUtils {
+
+    private TextUtils() {
+        // no op
+    }
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+
+    public static boolean equals(CharSequence a, CharSequence b) {
+        return a == b || a != null && b != null && a.toString().equals(b.toString());
+    }
+}
@@ -0,0 +1,51 @@
+package android.view;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * Calls frame callbacks on the next 16 ms boundary of {@link System#nanoTime()}.
+ *
+ * @author rwondratschek
+ */
+public final class Choreographer {
+
+    private static final long FRAME_INTERVAL_NANOS = 16_666_667L;
+
+    private static final ThreadLocal<Choreographer> INSTANCE = new ThreadLocal<Choreographer>() {
+        @Override
+        protected Choreographer initialValue() {
+            Looper looper = Looper.myLooper();
+            if (looper == null) {
+                throw new IllegalStateException("The current thread must have a looper!");
+            }
+            return new Choreographer(looper);
+        }
+    };
+
+    public static Choreographer getInstance() {
+        return INSTANCE.get();
+    }
+
+    public interface FrameCallback {
+        void doFrame(long frameTimeNanos);
+    }
+
+    private final Handler mHandler;
+
+    private Choreographer(Looper looper) {
+        mHandler = new Handler(looper);
+    }
+
+    public void postFrameCallback(final FrameCallback callback) {
+        long now = System.nanoTime();
+        final long frameTimeNanos = now - now % FRAME_INTERVAL_NANOS + FRAME_INTERVAL_NANOS;
+
+        mHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                callback.doFrame(frameTimeNanos);
+            }
+        }, (frameTimeNanos - now) / 1_000_000L);
+    }
+}
@@ -0,0 +1,14 @@
+# Generated dispatchers are loaded by the name of the class declaring the callback methods
+-keep class **$$TaskResultDispatcher { *; }
+
+-keepattributes *Annotation*
+-keepclassmembers class * {
+    @net.vrallev.android.task.TaskResult <methods>;
+    @net.vrallev.android.task.TaskProgress <methods>;
+    @net.vrallev.android.task.TaskFailure <methods>;
+}
+-keepnames class * {
+    @net.vrallev.android.task.TaskResult <methods>;
+    @net.vrallev.android.task.TaskProgress <methods>;
+    @net.vrallev.android.task.TaskFailure <methods>;
+}
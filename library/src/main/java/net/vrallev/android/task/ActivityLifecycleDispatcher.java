@@ -0,0 +1,281 @@
+package net.vrallev.android.task;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.support.v4.app.FragmentActivity;
+import android.util.SparseArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registered once per {@link TaskExecutor}. Keeps an index from activity hash to the callbacks bound to this
+ * activity, so that a lifecycle event only touches the tasks of the affected activity. Each dispatcher has a
+ * random session ID. All dispatchers with callbacks for an activity add their session ID to its saved state. A saved
+ * session ID, which doesn't belong to any dispatcher in this process, means the activity was recreated in a new
+ * process, otherwise it's a configuration change. The fragments of each created activity are tracked in a
+ * {@link FragmentIndex}. Whether an activity's state is saved is tracked as well, so that no fragment transaction is
+ * needed to find out, if a result can be delivered.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class ActivityLifecycleDispatcher implements Application.ActivityLifecycleCallbacks {
+
+    private static final String ACTIVITY_HASH = "ACTIVITY_HASH";
+    private static final String ACTIVITY_SESSIONS = "ACTIVITY_SESSIONS";
+
+    private static final Callback[] NO_CALLBACKS = new Callback[0];
+
+    // the session IDs of all dispatchers in this process
+    private static final Set<Long> SESSIONS = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+    /*package*/ interface Callback {
+
+        void onActivityRecreated(Activity activity);
+
+        void onActivityVisible(Activity activity);
+
+        void onActivityStopped(Activity activity);
+
+        void onActivitySaveInstanceState(Activity activity);
+    }
+
+    /*package*/ interface Listener {
+
+        /**
+         * Called, if the activity was recreated after the process was killed.
+         */
+        void onActivityRestored(Activity activity, long sessionId, int activityHash);
+
+        /**
+         * Called for every activity, unlike {@link Callback#onActivityVisible(Activity)}.
+         */
+        void onActivityStarted(Activity activity);
+
+        void onActivityDestroyed(Activity activity);
+    }
+
+    private final SparseArray<List<Callback>> mCallbacks;
+    private final Map<Callback, Integer> mActivityHashes;
+    private final Map<Activity, Boolean> mStateSaved;
+    private final Listener mListener;
+    private final long mSessionId;
+
+    public ActivityLifecycleDispatcher(Listener listener) {
+        mCallbacks = new SparseArray<>();
+        mActivityHashes = new IdentityHashMap<>();
+        mStateSaved = new WeakHashMap<>();
+        mListener = listener;
+
+        long sessionId;
+        Random random = new Random();
+        do {
+            sessionId = random.nextLong();
+        } while (sessionId == 0 || !SESSIONS.add(sessionId));
+        mSessionId = sessionId;
+    }
+
+    public long getSessionId() {
+        return mSessionId;
+    }
+
+    public synchronized void register(Callback callback, int activityHash) {
+        unregister(callback);
+
+        List<Callback> callbacks = mCallbacks.get(activityHash);
+        if (callbacks == null) {
+            callbacks = new ArrayList<>();
+            mCallbacks.put(activityHash, callbacks);
+        }
+        callbacks.add(callback);
+        mActivityHashes.put(callback, activityHash);
+    }
+
+    public synchronized void unregister(Callback callback) {
+        Integer activityHash = mActivityHashes.remove(callback);
+        if (activityHash == null) {
+            return;
+        }
+
+        List<Callback> callbacks = mCallbacks.get(activityHash);
+        if (callbacks != null) {
+            callbacks.remove(callback);
+            if (callbacks.isEmpty()) {
+                mCallbacks.remove(activityHash);
+            }
+        }
+    }
+
+    /**
+     * @return Whether the activity saved its state and can't handle fragment transactions. Activities created before
+     * this dispatcher was registered are probed once, afterwards their lifecycle callbacks keep the state up to date.
+     */
+    public boolean isStateSaved(Activity activity) {
+        synchronized (this) {
+            Boolean stateSaved = mStateSaved.get(activity);
+            if (stateSaved != null) {
+                return stateSaved;
+            }
+        }
+
+        boolean stateSaved = probeStateSaved(activity);
+        setStateSaved(activity, stateSaved);
+        return stateSaved;
+    }
+
+    private synchronized void setStateSaved(Activity activity, boolean stateSaved) {
+        mStateSaved.put(activity, stateSaved);
+    }
+
+    private static boolean probeStateSaved(Activity activity) {
+        try {
+            android.app.Fragment fragment = new android.app.Fragment();
+            activity.getFragmentManager().beginTransaction().add(fragment, "GetVisibilityFragment").commit();
+            activity.getFragmentManager().beginTransaction().remove(fragment).commit();
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    private synchronized Callback[] getCallbacks(int activityHash) {
+        List<Callback> callbacks = mCallbacks.get(activityHash);
+        if (callbacks == null) {
+            return NO_CALLBACKS;
+        }
+        return callbacks.toArray(new Callback[callbacks.size()]);
+    }
+
+    private synchronized Callback[] moveCallbacks(int oldActivityHash, int newActivityHash) {
+        List<Callback> callbacks = mCallbacks.get(oldActivityHash);
+        if (callbacks == null) {
+            return NO_CALLBACKS;
+        }
+
+        Callback[] result = callbacks.toArray(new Callback[callbacks.size()]);
+        for (Callback callback : result) {
+            register(callback, newActivityHash);
+        }
+        return result;
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        if (activity instanceof FragmentActivity) {
+            // the fragments are restored after this callback
+            FragmentIndex.register((FragmentActivity) activity);
+        }
+        setStateSaved(activity, false);
+
+        if (savedInstanceState == null) {
+            return;
+        }
+
+        int activityHash = savedInstanceState.getInt(ACTIVITY_HASH, -1);
+        if (activityHash == -1) {
+            return;
+        }
+
+        long[] sessionIds = savedInstanceState.getLongArray(ACTIVITY_SESSIONS);
+        if (sessionIds != null && !contains(sessionIds, mSessionId)) {
+            for (long sessionId : sessionIds) {
+                if (!SESSIONS.contains(sessionId) && mListener != null) {
+                    // no dispatcher in this process saved the state, the process was restarted
+                    mListener.onActivityRestored(activity, sessionId, activityHash);
+                }
+            }
+            return;
+        }
+
+        for (Callback callback : moveCallbacks(activityHash, activity.hashCode())) {
+            callback.onActivityRecreated(activity);
+        }
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        setStateSaved(activity, false);
+        for (Callback callback : getCallbacks(activity.hashCode())) {
+            callback.onActivityVisible(activity);
+        }
+        if (mListener != null) {
+            mListener.onActivityStarted(activity);
+        }
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+        setStateSaved(activity, false);
+        for (Callback callback : getCallbacks(activity.hashCode())) {
+            callback.onActivityVisible(activity);
+        }
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+        // do nothing
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        setStateSaved(activity, true);
+        for (Callback callback : getCallbacks(activity.hashCode())) {
+            callback.onActivityStopped(activity);
+        }
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        setStateSaved(activity, true);
+
+        Callback[] callbacks = getCallbacks(activity.hashCode());
+        if (callbacks.length == 0) {
+            return;
+        }
+
+        outState.putInt(ACTIVITY_HASH, activity.hashCode());
+
+        // other dispatchers write into the same state
+        long[] sessionIds = outState.getLongArray(ACTIVITY_SESSIONS);
+        if (sessionIds == null) {
+            sessionIds = new long[]{mSessionId};
+        } else if (!contains(sessionIds, mSessionId)) {
+            sessionIds = Arrays.copyOf(sessionIds, sessionIds.length + 1);
+            sessionIds[sessionIds.length - 1] = mSessionId;
+        }
+        outState.putLongArray(ACTIVITY_SESSIONS, sessionIds);
+        for (Callback callback : callbacks) {
+            callback.onActivitySaveInstanceState(activity);
+        }
+    }
+
+    private static boolean contains(long[] sessionIds, long sessionId) {
+        for (long id : sessionIds) {
+            if (id == sessionId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        FragmentIndex.unregister(activity);
+
+        synchronized (this) {
+            mStateSaved.remove(activity);
+        }
+        if (mListener != null) {
+            mListener.onActivityDestroyed(activity);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net.vrallev.android.task;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Collects deliveries and runs them together once per frame on the main thread, in the order they were queued.
+ * When the frame budget is used up, the remaining deliveries are carried over to the next frame.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class BatchedDelivery implements Runnable {
+
+    private final ConcurrentLinkedQueue<Runnable> mQueue;
+    private final AtomicBoolean mScheduled;
+    private final long mFrameBudgetNanos;
+
+    public BatchedDelivery(long frameBudgetNanos) {
+        mQueue = new ConcurrentLinkedQueue<>();
+        mScheduled = new AtomicBoolean();
+        mFrameBudgetNanos = frameBudgetNanos;
+    }
+
+    public void enqueue(Runnable delivery) {
+        mQueue.offer(delivery);
+        scheduleFrame();
+    }
+
+    @Override
+    public void run() {
+        mScheduled.set(false);
+
+        // at least one delivery per frame, so that a slow callback can't stall the queue
+        long deadline = System.nanoTime() + mFrameBudgetNanos;
+        Runnable delivery;
+        while ((delivery = mQueue.poll()) != null) {
+            delivery.run();
+            if (System.nanoTime() >= deadline) {
+                break;
+            }
+        }
+
+        if (!mQueue.isEmpty()) {
+            scheduleFrame();
+        }
+    }
+
+    private void scheduleFrame() {
+        if (mScheduled.compareAndSet(false, true)) {
+            FrameScheduler.postFrameCallback(this);
+        }
+    }
+}
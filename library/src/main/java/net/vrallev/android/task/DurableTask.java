@@ -0,0 +1,49 @@
+package net.vrallev.android.task;
+
+import android.app.Activity;
+import android.content.Context;
+import android.support.v4.app.Fragment;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A task, which survives the death of its process. When it's started, its input is written to a journal and it's
+ * removed from the journal once it finished. If the process is killed before, then the task is created again with
+ * its constructor without arguments, {@link #restoreInput(DataInput)} is called and it's executed again, when the
+ * {@link TaskExecutor} built in the next process is published with {@link TaskExecutor#asSingleton()} or at the
+ * latest in the next iteration of the main thread. A task, which didn't finish after three resumes, e.g. because it
+ * crashes the process, is dropped. Only used, if the executor was built with
+ * {@link TaskExecutor.Builder#setDurableExecution(Context)}.
+ *
+ * <br>
+ * <br>
+ *
+ * A durable task keeps running, if its activity finishes. The result is kept until a new callback is set with
+ * {@link #replaceCallback(Activity)} or {@link #replaceCallback(Fragment)}, e.g. in {@code onCreate()} of the next
+ * activity. A finished task delivers its result to the new callback right away. If the next activity is destroyed
+ * without setting a callback, then the task is dropped and not executed again. Find the running tasks with
+ * {@link TaskExecutor#getAllTasks(Class)}. Because a task may be executed
+ * again after it was interrupted, {@link #execute()} should be able to continue from partial work.
+ *
+ * @author rwondratschek
+ */
+public abstract class DurableTask<RESULT> extends Task<RESULT> {
+
+    /**
+     * Writes everything needed to execute this task again. Called on the thread starting the task.
+     *
+     * @param out The destination.
+     * @throws IOException If the input can't be written, the task is executed without being durable.
+     */
+    protected abstract void saveInput(DataOutput out) throws IOException;
+
+    /**
+     * Reads the values written in {@link #saveInput(DataOutput)}, before the task is executed again.
+     *
+     * @param in The source.
+     * @throws IOException If the input can't be read, the task is dropped.
+     */
+    protected abstract void restoreInput(DataInput in) throws IOException;
+}
@@ -0,0 +1,154 @@
+package net.vrallev.android.task;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the input of started {@link DurableTask}s in a {@link PendingResultJournal}, until they finished. The
+ * session and activity fields of the journal aren't used. Each record counts how often the task was resumed, a
+ * task which crashes the process every time is dropped after {@link #MAX_RESUMES} attempts.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class DurableTaskStore {
+
+    private static final String TAG = "DurableTaskStore";
+
+    /*package*/ static final int MAX_RESUMES = 3;
+
+    /*package*/ static final class StoredTask {
+
+        private final long mRecordId;
+        private final DurableTask<?> mTask;
+
+        private StoredTask(long recordId, DurableTask<?> task) {
+            mRecordId = recordId;
+            mTask = task;
+        }
+
+        public long getRecordId() {
+            return mRecordId;
+        }
+
+        public DurableTask<?> getTask() {
+            return mTask;
+        }
+    }
+
+    private final PendingResultJournal mJournal;
+    private List<PendingResultJournal.Record> mStoredRecords;
+
+    public DurableTaskStore(File file) throws IOException {
+        mJournal = new PendingResultJournal(file);
+        // tasks started in this process before the restore must not be resumed a second time
+        mStoredRecords = mJournal.getRecords();
+    }
+
+    /**
+     * @return The ID of the record or {@code -1}, if the task wasn't persisted.
+     */
+    public long persist(DurableTask<?> task) {
+        if (!PendingResultStore.hasDefaultConstructor(task.getClass())) {
+            Log.w(TAG, "Durable tasks need a constructor without arguments to be restored, " + task.getClass().getName());
+            return -1;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeInt(0);
+            out.writeUTF(task.getClass().getName());
+            out.writeUTF(task.getPriority().name());
+            out.writeLong(task.getTimeoutMillis());
+            task.saveInput(out);
+            out.close();
+
+            return mJournal.append(0, 0, System.currentTimeMillis(), bytes.toByteArray());
+
+        } catch (Exception e) {
+            Log.e(TAG, e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    public void remove(long recordId) {
+        try {
+            mJournal.remove(recordId);
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Creates all tasks, which didn't finish in an earlier process, only once. The records stay in the journal until
+     * they are removed, tasks which can't be restored or were resumed too often are removed right away. The resume
+     * count is increased before the task runs, so that a crash counts as well.
+     */
+    public synchronized List<StoredTask> restore() {
+        List<StoredTask> tasks = new ArrayList<>();
+
+        List<PendingResultJournal.Record> storedRecords = mStoredRecords;
+        mStoredRecords = Collections.emptyList();
+
+        for (PendingResultJournal.Record record : storedRecords) {
+            try {
+                byte[] payload = record.getPayload();
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+                int resumes = in.readInt();
+                if (resumes >= MAX_RESUMES) {
+                    Log.w(TAG, "Dropping durable task resumed " + resumes + " times without finishing, " + in.readUTF());
+                    remove(record.getId());
+                    continue;
+                }
+
+                DurableTask<?> task = read(in);
+
+                // the new record is written first, a crash in between resumes the task twice rather than never
+                long recordId = mJournal.append(0, 0, record.getTimestamp(), withResumes(payload, resumes + 1));
+                remove(record.getId());
+
+                tasks.add(new StoredTask(recordId, task));
+
+            } catch (Exception e) {
+                Log.e(TAG, e.getMessage(), e);
+                remove(record.getId());
+            }
+        }
+
+        return tasks;
+    }
+
+    private static byte[] withResumes(byte[] payload, int resumes) {
+        byte[] result = payload.clone();
+        result[0] = (byte) (resumes >>> 24);
+        result[1] = (byte) (resumes >>> 16);
+        result[2] = (byte) (resumes >>> 8);
+        result[3] = (byte) resumes;
+        return result;
+    }
+
+    private static DurableTask<?> read(DataInputStream in) throws Exception {
+        DurableTask<?> task = (DurableTask<?>) PendingResultStore.newInstance(in.readUTF());
+        task.setPriority(TaskPriority.valueOf(in.readUTF()));
+
+        long timeoutMillis = in.readLong();
+        if (timeoutMillis > 0) {
+            task.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+
+        task.restoreInput(in);
+        return task;
+    }
+}
@@ -5,12 +5,17 @@ import android.os.Looper;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentManager;
+import android.util.Log;
 
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * The fragment managers must only be accessed on the main thread. Callers on other threads should hop to the
+ * main thread once with {@link #callOnMainThread(Callable)} and do all lookups there.
+ *
  * @author rwondratschek
  */
 /*package*/ final class FragmentHack {
@@ -19,63 +24,64 @@ import java.util.concurrent.atomic.AtomicReference;
     // no op
   }
 
+  private static final String TAG = "FragmentHack";
+
   private static final Handler HANDLER = new Handler(Looper.getMainLooper());
 
-  public static FragmentManager getFragmentManager(final FragmentActivity activity) {
-    if (Looper.myLooper() == Looper.getMainLooper()) {
-      try {
-        return activity.getSupportFragmentManager();
-      } catch (Exception e) {
-        return null;
-      }
-    } else {
-
-      final CountDownLatch latch = new CountDownLatch(1);
-      final AtomicReference<FragmentManager> reference = new AtomicReference<>();
-
-      HANDLER.post(new Runnable() {
-        @Override
-        public void run() {
-          reference.set(getFragmentManager(activity));
-          latch.countDown();
-        }
-      });
-
-      try {
-        latch.await(3, TimeUnit.SECONDS);
-      } catch (InterruptedException ignored) {
-      }
+  public static boolean isMainThread() {
+    return Looper.myLooper() == Looper.getMainLooper();
+  }
 
-      return reference.get();
+  public static void postOnMainThread(Runnable runnable) {
+    HANDLER.post(runnable);
+  }
+
+  public static FragmentManager getFragmentManager(FragmentActivity activity) {
+    try {
+      return activity.getSupportFragmentManager();
+    } catch (Exception e) {
+      return null;
     }
   }
 
-  public static FragmentManager getChildFragmentManager(final Fragment fragment) {
-    if (Looper.myLooper() == Looper.getMainLooper()) {
-      try {
-        return fragment.getChildFragmentManager();
-      } catch (Exception e) {
-        return null;
-      }
-    } else {
-
-      final CountDownLatch latch = new CountDownLatch(1);
-      final AtomicReference<FragmentManager> reference = new AtomicReference<>();
-
-      HANDLER.post(new Runnable() {
-        @Override
-        public void run() {
-          reference.set(getChildFragmentManager(fragment));
-          latch.countDown();
-        }
-      });
-
-      try {
-        latch.await(3, TimeUnit.SECONDS);
-      } catch (InterruptedException ignored) {
+  public static FragmentManager getChildFragmentManager(Fragment fragment) {
+    try {
+      return fragment.getChildFragmentManager();
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  public static <T> T callOnMainThread(final Callable<T> callable) {
+    if (isMainThread()) {
+      return call(callable);
+    }
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    final AtomicReference<T> reference = new AtomicReference<>();
+
+    HANDLER.post(new Runnable() {
+      @Override
+      public void run() {
+        reference.set(call(callable));
+        latch.countDown();
       }
+    });
+
+    try {
+      latch.await(3, TimeUnit.SECONDS);
+    } catch (InterruptedException ignored) {
+    }
+
+    return reference.get();
+  }
 
-      return reference.get();
+  private static <T> T call(Callable<T> callable) {
+    try {
+      return callable.call();
+    } catch (Exception e) {
+      Log.e(TAG, e.getMessage(), e);
+      return null;
     }
   }
 }
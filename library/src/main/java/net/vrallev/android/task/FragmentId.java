@@ -0,0 +1,77 @@
+package net.vrallev.android.task;
+
+import java.util.Arrays;
+
+/**
+ * Identifies a fragment by the path of indices from the activity down to the fragment, the fragment's
+ * container id and its tag. Comparisons don't allocate.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class FragmentId {
+
+    /*package*/ static final int NO_INDEX = -1;
+
+    private final int[] mIndexPath;
+    private final int mId;
+    private final String mTag;
+
+    // the index isn't part of the hash, so that relaxed comparisons can use it, too
+    private final int mHash;
+
+    /*package*/ FragmentId(int[] indexPath, int id, String tag) {
+        mIndexPath = indexPath;
+        mId = id;
+        mTag = tag;
+        mHash = 31 * id + (tag != null ? tag.hashCode() : 0);
+    }
+
+    /*package*/ int[] getIndexPath() {
+        return mIndexPath;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public String getTag() {
+        return mTag;
+    }
+
+    public boolean equals(FragmentId other, boolean compareIndex) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || mHash != other.mHash || mId != other.mId) {
+            return false;
+        }
+        if (mTag != null ? !mTag.equals(other.mTag) : other.mTag != null) {
+            return false;
+        }
+        return !compareIndex || Arrays.equals(mIndexPath, other.mIndexPath);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FragmentId && equals((FragmentId) o, true);
+    }
+
+    @Override
+    public int hashCode() {
+        return mHash;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < mIndexPath.length; i++) {
+            if (i > 0) {
+                builder.append('-');
+            }
+            if (mIndexPath[i] != NO_INDEX) {
+                builder.append(mIndexPath[i]);
+            }
+        }
+        return builder.append('/').append(mId).append('/').append(mTag).toString();
+    }
+}
@@ -15,61 +15,51 @@ import java.util.List;
         // no op
     }
 
-    public static boolean equals(String fragmentId1, String fragmentId2, boolean compareIndex) {
-        String[] split1 = fragmentId1.split("/");
-        String[] split2 = fragmentId2.split("/");
-
-        if (split1.length != 3 || split2.length != 3) {
+    public static boolean matches(FragmentId fragmentId, Fragment fragment, boolean compareIndex) {
+        // cheap checks first, the index path is only computed for candidates
+        if (fragmentId.getId() != fragment.getId()) {
             return false;
         }
-
-        if (compareIndex && !split1[0].equals(split2[0])) {
+        String tag = fragment.getTag();
+        if (fragmentId.getTag() != null ? !fragmentId.getTag().equals(tag) : tag != null) {
             return false;
         }
-
-        for (int i = 1; i < split1.length; i++) {
-            if (!split1[i].equals(split2[i])) {
-                return false;
-            }
-        }
-
-        return true;
+        return !compareIndex || fragmentId.equals(getFragmentId(fragment), true);
     }
 
-    public static String getFragmentId(Fragment fragment) {
-        String index = getIndex(fragment);
-        int id = fragment.getId();
+    public static FragmentId getFragmentId(Fragment fragment) {
+        int depth = 0;
+        for (Fragment parent = fragment; parent != null; parent = parent.getParentFragment()) {
+            depth++;
+        }
 
-        String tag = fragment.getTag();
-        if (tag == null) {
-            tag = "null";
+        int[] indexPath = new int[depth];
+        Fragment current = fragment;
+        for (int i = depth - 1; i >= 0; i--) {
+            indexPath[i] = getIndex(current);
+            current = current.getParentFragment();
         }
 
-        return index + '/' + id + '/' + tag;
+        return new FragmentId(indexPath, fragment.getId(), fragment.getTag());
     }
 
     @SuppressLint("RestrictedApi")
-    private static String getIndex(Fragment fragment) {
-        String index;
-        if (fragment.getParentFragment() != null) {
-            index = getIndex(fragment.getParentFragment()) + "-";
-        } else {
-            index = "";
+    private static int getIndex(Fragment fragment) {
+        FragmentManager fragmentManager = fragment.getFragmentManager();
+        if (fragmentManager == null) {
+            return FragmentId.NO_INDEX;
         }
 
-        FragmentManager fragmentManager = fragment.getFragmentManager();
-        if (fragmentManager != null) {
-            List<Fragment> fragments = fragmentManager.getFragments();
-            if (fragments != null && !fragments.isEmpty()) {
-                for (int i = 0; i < fragments.size(); i++) {
-                    if (fragment.equals(fragments.get(i))) {
-                        index += i;
-                        break;
-                    }
-                }
-            }
+        List<Fragment> fragments = fragmentManager.getFragments();
+        if (fragments == null) {
+            return FragmentId.NO_INDEX;
         }
 
-        return index;
+        for (int i = 0; i < fragments.size(); i++) {
+            if (fragment.equals(fragments.get(i))) {
+                return i;
+            }
+        }
+        return FragmentId.NO_INDEX;
     }
 }
@@ -0,0 +1,129 @@
+package net.vrallev.android.task;
+
+import android.app.Activity;
+import android.content.Context;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.util.SparseArray;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The attached fragments of one activity, grouped by their ID. The index is updated by fragment lifecycle
+ * callbacks registered when the activity is created, before its fragments are attached or restored. Activities
+ * created earlier have no index, their fragment tree must be searched instead. All methods must be called on
+ * the main thread.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class FragmentIndex extends FragmentManager.FragmentLifecycleCallbacks {
+
+    private static final Map<Activity, FragmentIndex> INDEXES = new WeakHashMap<>();
+
+    /*package*/ static void register(FragmentActivity activity) {
+        if (INDEXES.containsKey(activity)) {
+            return;
+        }
+
+        FragmentManager fragmentManager = FragmentHack.getFragmentManager(activity);
+        if (fragmentManager == null) {
+            return;
+        }
+
+        FragmentIndex index = new FragmentIndex();
+        fragmentManager.registerFragmentLifecycleCallbacks(index, true);
+        INDEXES.put(activity, index);
+    }
+
+    /*package*/ static void unregister(Activity activity) {
+        FragmentIndex index = INDEXES.remove(activity);
+        if (index != null && activity instanceof FragmentActivity) {
+            FragmentManager fragmentManager = FragmentHack.getFragmentManager((FragmentActivity) activity);
+            if (fragmentManager != null) {
+                fragmentManager.unregisterFragmentLifecycleCallbacks(index);
+            }
+        }
+    }
+
+    /**
+     * @return The index or {@code null}, if the fragments of this activity aren't tracked.
+     */
+    /*package*/ static FragmentIndex forActivity(Activity activity) {
+        return INDEXES.get(activity);
+    }
+
+    private final SparseArray<List<WeakReference<Fragment>>> mFragments;
+
+    private FragmentIndex() {
+        mFragments = new SparseArray<>();
+    }
+
+    @Override
+    public void onFragmentAttached(FragmentManager fm, Fragment f, Context context) {
+        List<WeakReference<Fragment>> fragments = mFragments.get(f.getId());
+        if (fragments == null) {
+            fragments = new ArrayList<>(2);
+            mFragments.put(f.getId(), fragments);
+        }
+        fragments.add(new WeakReference<>(f));
+    }
+
+    @Override
+    public void onFragmentDetached(FragmentManager fm, Fragment f) {
+        List<WeakReference<Fragment>> fragments = mFragments.get(f.getId());
+        if (fragments == null) {
+            return;
+        }
+
+        for (int i = fragments.size() - 1; i >= 0; i--) {
+            Fragment fragment = fragments.get(i).get();
+            if (fragment == null || fragment == f) {
+                fragments.remove(i);
+            }
+        }
+        if (fragments.isEmpty()) {
+            mFragments.remove(f.getId());
+        }
+    }
+
+    /**
+     * @return The attached fragments with the same ID and tag in the order they were attached, which isn't the
+     * order of the fragment tree. The index path isn't compared.
+     */
+    public List<Fragment> getFragments(FragmentId fragmentId) {
+        List<WeakReference<Fragment>> fragments = mFragments.get(fragmentId.getId());
+        if (fragments == null) {
+            return Collections.emptyList();
+        }
+
+        List<Fragment> result = null;
+        for (WeakReference<Fragment> reference : fragments) {
+            Fragment fragment = reference.get();
+            if (fragment != null && fragment.getActivity() != null && FragmentIdHelper.matches(fragmentId, fragment, false)) {
+                if (result == null) {
+                    result = new ArrayList<>(1);
+                }
+                result.add(fragment);
+            }
+        }
+        return result == null ? Collections.<Fragment>emptyList() : result;
+    }
+
+    /**
+     * @return The attached fragment with the same index path, ID and tag or {@code null}.
+     */
+    public Fragment getFragment(FragmentId fragmentId) {
+        for (Fragment fragment : getFragments(fragmentId)) {
+            if (FragmentIdHelper.matches(fragmentId, fragment, true)) {
+                return fragment;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,65 @@
+package net.vrallev.android.task;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Runs callbacks on the main thread aligned to the next frame. Falls back to a plain {@link Handler} before
+ * Jelly Bean.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class FrameScheduler {
+
+    private FrameScheduler() {
+        // no op
+    }
+
+    private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+    // the main thread's instance, it accepts callbacks from any thread
+    private static volatile Object choreographer;
+
+    public static void postFrameCallback(final Runnable runnable) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            HANDLER.post(runnable);
+            return;
+        }
+
+        if (choreographer == null && Looper.myLooper() != Looper.getMainLooper()) {
+            HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    postFrameCallback(runnable);
+                }
+            });
+            return;
+        }
+
+        Api16.postFrameCallback(runnable);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static final class Api16 {
+
+        private Api16() {
+            // no op
+        }
+
+        private static void postFrameCallback(final Runnable runnable) {
+            if (choreographer == null) {
+                choreographer = Choreographer.getInstance();
+            }
+
+            ((Choreographer) choreographer).postFrameCallback(new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    runnable.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package net.vrallev.android.task;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds. Values are counted in power of two buckets, bucket {@code i}
+ * holds the values from {@code 2^(i-1)} to {@code 2^i - 1}, so recording a value is a handful of atomic
+ * increments and never allocates.
+ *
+ * @author rwondratschek
+ */
+@SuppressWarnings("unused")
+public final class LatencyHistogram {
+
+    private static final int BUCKET_COUNT = 64;
+
+    private final AtomicLongArray mBuckets;
+    private final AtomicLong mCount;
+    private final AtomicLong mSum;
+    private final AtomicLong mMax;
+
+    /*package*/ LatencyHistogram() {
+        mBuckets = new AtomicLongArray(BUCKET_COUNT);
+        mCount = new AtomicLong();
+        mSum = new AtomicLong();
+        mMax = new AtomicLong();
+    }
+
+    /*package*/ void record(long nanos) {
+        if (nanos < 0) {
+            // not measured
+            return;
+        }
+
+        mBuckets.incrementAndGet(bucketIndex(nanos));
+        mCount.incrementAndGet();
+        mSum.addAndGet(nanos);
+
+        long max;
+        do {
+            max = mMax.get();
+        } while (nanos > max && !mMax.compareAndSet(max, nanos));
+    }
+
+    /**
+     * @return A copy of the current values. Values recorded concurrently may be only partially visible.
+     */
+    public Snapshot snapshot() {
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+        }
+        return new Snapshot(buckets, mCount.get(), mSum.get(), mMax.get());
+    }
+
+    private static int bucketIndex(long nanos) {
+        return BUCKET_COUNT - Long.numberOfLeadingZeros(nanos);
+    }
+
+    public static final class Snapshot {
+
+        private final long[] mBuckets;
+        private final long mCount;
+        private final long mSum;
+        private final long mMax;
+
+        private Snapshot(long[] buckets, long count, long sum, long max) {
+            mBuckets = buckets;
+            mCount = count;
+            mSum = sum;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getMeanNanos() {
+            return mCount == 0 ? 0 : mSum / mCount;
+        }
+
+        public long getMaxNanos() {
+            return mMax;
+        }
+
+        /**
+         * @param percentile A value between 0 and 100.
+         * @return The upper bound of the bucket containing the percentile, at most the maximum recorded value.
+         */
+        public long getPercentileNanos(double percentile) {
+            long total = 0;
+            for (long bucket : mBuckets) {
+                total += bucket;
+            }
+            if (total == 0) {
+                return 0;
+            }
+
+            long threshold = (long) Math.ceil(total * Math.min(Math.max(percentile, 0), 100) / 100.0);
+            long seen = 0;
+            for (int i = 0; i < mBuckets.length; i++) {
+                seen += mBuckets[i];
+                if (seen >= threshold && seen > 0) {
+                    long upperBound = i == 0 ? 0 : (1L << i) - 1;
+                    return Math.min(upperBound, mMax);
+                }
+            }
+            return mMax;
+        }
+
+        /**
+         * @return The number of values per bucket, bucket {@code i} holds the values from {@code 2^(i-1)} to
+         * {@code 2^i - 1} nanoseconds.
+         */
+        public long[] getBucketCounts() {
+            return Arrays.copyOf(mBuckets, mBuckets.length);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "count=%d, mean=%.2fms, p50=%.2fms, p90=%.2fms, p99=%.2fms, max=%.2fms",
+                    mCount, toMillis(getMeanNanos()), toMillis(getPercentileNanos(50)), toMillis(getPercentileNanos(90)),
+                    toMillis(getPercentileNanos(99)), toMillis(mMax));
+        }
+
+        private static double toMillis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package net.vrallev.android.task;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * All {@link TaskResult}, {@link TaskProgress} and {@link TaskFailure} methods declared in one class. Each class
+ * is indexed once, either from its generated {@link TaskResultDispatcher} or with reflection, and every later
+ * lookup is answered from the index without reflection.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class MethodIndex {
+
+    private static final String TAG = "MethodIndex";
+
+    private static final List<Class<? extends Annotation>> ANNOTATIONS = Arrays.<Class<? extends Annotation>>asList(
+            TaskResult.class, TaskProgress.class, TaskFailure.class);
+
+    private static final MethodIndex EMPTY = new MethodIndex(new Class<?>[0], new String[0], new Class<?>[0], new Class<?>[0], new MethodInvoker[0]);
+
+    // the methods reference their class, so a weak key would never be cleared, app classes aren't unloaded anyway
+    private static final ConcurrentMap<Class<?>, MethodIndex> INDEXES = new ConcurrentHashMap<>();
+
+    /*package*/ static MethodIndex forClass(Class<?> target) {
+        MethodIndex index = INDEXES.get(target);
+        if (index == null) {
+            index = create(target);
+            MethodIndex existing = INDEXES.putIfAbsent(target, index);
+            if (existing != null) {
+                index = existing;
+            }
+        }
+        return index;
+    }
+
+    /*package*/ static MethodIndex create(Class<?> target) {
+        TaskResultDispatcher dispatcher = TaskResultDispatcher.forClass(target);
+        if (dispatcher != null) {
+            return fromDispatcher(dispatcher);
+        }
+        return fromReflection(target);
+    }
+
+    private static MethodIndex fromDispatcher(TaskResultDispatcher dispatcher) {
+        Class<?>[] annotations = dispatcher.getAnnotations();
+        if (annotations.length == 0) {
+            return EMPTY;
+        }
+
+        MethodInvoker[] invokers = new MethodInvoker[annotations.length];
+        for (int i = 0; i < invokers.length; i++) {
+            invokers[i] = MethodInvoker.forDispatcher(dispatcher, i);
+        }
+        return new MethodIndex(annotations, dispatcher.getIds(), dispatcher.getResultTypes(), dispatcher.getTaskTypes(), invokers);
+    }
+
+    private static MethodIndex fromReflection(Class<?> target) {
+        Method[] declaredMethods;
+        try {
+            declaredMethods = target.getDeclaredMethods();
+        } catch (Error e) {
+            Log.e(TAG, e.getMessage(), e);
+            return EMPTY;
+        }
+
+        if (declaredMethods == null) {
+            return EMPTY;
+        }
+
+        List<Class<?>> annotations = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        List<Class<?>> resultTypes = new ArrayList<>();
+        List<Class<?>> taskTypes = new ArrayList<>();
+        List<MethodInvoker> invokers = new ArrayList<>();
+
+        for (Method method : declaredMethods) {
+            for (Class<? extends Annotation> annotationClass : ANNOTATIONS) {
+                Annotation annotation = method.getAnnotation(annotationClass);
+                if (annotation == null) {
+                    continue;
+                }
+
+                if (Modifier.isPrivate(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) {
+                    // same rule as in the annotation processor
+                    Log.w(TAG, "Callback methods must not be private or static, ignoring " + method);
+                    continue;
+                }
+
+                Class<?>[] parameterTypes = method.getParameterTypes();
+                if (parameterTypes.length == 0 || parameterTypes.length > 2) {
+                    continue;
+                }
+
+                annotations.add(annotationClass);
+                ids.add(getAnnotationId(annotation));
+                resultTypes.add(parameterTypes[0]);
+                taskTypes.add(parameterTypes.length == 2 ? parameterTypes[1] : null);
+                invokers.add(MethodInvoker.forMethod(method));
+            }
+        }
+
+        if (invokers.isEmpty()) {
+            return EMPTY;
+        }
+
+        return new MethodIndex(annotations.toArray(new Class<?>[annotations.size()]), ids.toArray(new String[ids.size()]),
+                resultTypes.toArray(new Class<?>[resultTypes.size()]), taskTypes.toArray(new Class<?>[taskTypes.size()]),
+                invokers.toArray(new MethodInvoker[invokers.size()]));
+    }
+
+    private static String getAnnotationId(Annotation annotation) {
+        if (annotation instanceof TaskResult) {
+            return ((TaskResult) annotation).id();
+        } else if (annotation instanceof TaskProgress) {
+            return ((TaskProgress) annotation).id();
+        } else if (annotation instanceof TaskFailure) {
+            return ((TaskFailure) annotation).id();
+        } else {
+            return null;
+        }
+    }
+
+    private final Class<?>[] mAnnotations;
+    private final String[] mIds;
+    private final Class<?>[] mResultTypes;
+    private final Class<?>[] mTaskTypes;
+    private final MethodInvoker[] mInvokers;
+
+    private MethodIndex(Class<?>[] annotations, String[] ids, Class<?>[] resultTypes, Class<?>[] taskTypes, MethodInvoker[] invokers) {
+        mAnnotations = annotations;
+        mIds = ids;
+        mResultTypes = resultTypes;
+        mTaskTypes = taskTypes;
+        mInvokers = invokers;
+
+        warnAboutDuplicates();
+    }
+
+    /**
+     * A method with exactly the result type and a matching task type wins, otherwise the first method accepting
+     * the result type is used.
+     *
+     * @return The method or {@code null}, if no method in this class accepts the result.
+     */
+    public MethodInvoker find(Class<? extends Annotation> annotation, String annotationId, Class<?> resultType, Class<? extends Task> taskClass) {
+        final boolean useAnnotationId = !TextUtils.isEmpty(annotationId);
+
+        int candidate = -1;
+
+        for (int i = 0; i < mInvokers.length; i++) {
+            if (mAnnotations[i] != annotation) {
+                continue;
+            }
+            if (useAnnotationId && !annotationId.equals(mIds[i])) {
+                continue;
+            }
+            if (!useAnnotationId && !TextUtils.isEmpty(mIds[i])) {
+                continue;
+            }
+
+            if (mResultTypes[i] == resultType) {
+                if (mTaskTypes[i] == null || mTaskTypes[i].isAssignableFrom(taskClass)) {
+                    return mInvokers[i];
+                }
+            }
+
+            if (candidate < 0 && mResultTypes[i].isAssignableFrom(resultType)) {
+                candidate = i;
+            }
+        }
+
+        return candidate < 0 ? null : mInvokers[candidate];
+    }
+
+    private void warnAboutDuplicates() {
+        for (int i = 0; i < mInvokers.length; i++) {
+            for (int j = i + 1; j < mInvokers.length; j++) {
+                if (mAnnotations[i] == mAnnotations[j] && mResultTypes[i] == mResultTypes[j] && mTaskTypes[i] == mTaskTypes[j]
+                        && TextUtils.equals(mIds[i], mIds[j])) {
+                    Log.w(TAG, "Found another method, which is ignored, index " + j);
+                }
+            }
+        }
+    }
+}
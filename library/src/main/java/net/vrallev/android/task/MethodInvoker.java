@@ -0,0 +1,131 @@
+package net.vrallev.android.task;
+
+import android.os.Looper;
+import android.util.Log;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Invokes a resolved callback method, either through a generated {@link TaskResultDispatcher} or with reflection.
+ * Invokers are created once per method, when its class is indexed, so everything which doesn't depend on the
+ * result is resolved up front.
+ *
+ * @author rwondratschek
+ */
+/*package*/ abstract class MethodInvoker {
+
+    private static final String TAG = "MethodInvoker";
+
+    // Looper.getMainLooper() synchronizes, compare the thread instead
+    private static final Thread MAIN_THREAD = Looper.getMainLooper().getThread();
+
+    public static MethodInvoker forMethod(Method method) {
+        return new ReflectionInvoker(method);
+    }
+
+    public static MethodInvoker forDispatcher(TaskResultDispatcher dispatcher, int index) {
+        return new DispatcherInvoker(dispatcher, index);
+    }
+
+    public abstract void invoke(Object target, Object result, Task<?> task);
+
+    private static final class ReflectionInvoker extends MethodInvoker {
+
+        private final Method mMethod;
+
+        // results are delivered on the main thread, reusing the arguments there avoids the varargs array
+        private final Object[] mMainThreadArgs;
+
+        private ReflectionInvoker(Method method) {
+            mMethod = method;
+            // getParameterTypes() copies the array, ask only once
+            mMainThreadArgs = new Object[method.getParameterTypes().length];
+
+            try {
+                // skips the access check on each call, also allows package private methods, private ones aren't indexed
+                method.setAccessible(true);
+            } catch (SecurityException e) {
+                Log.w(TAG, e.getMessage());
+            }
+        }
+
+        @Override
+        public void invoke(Object target, Object result, Task<?> task) {
+            boolean mainThread = Thread.currentThread() == MAIN_THREAD;
+            Object[] args = mainThread ? mMainThreadArgs : new Object[mMainThreadArgs.length];
+            args[0] = result;
+            if (args.length == 2) {
+                args[1] = task;
+            }
+
+            // not sure why, but Lint doesn't like this collapse
+            //noinspection TryWithIdenticalCatches
+            try {
+                // the arguments are copied before the callback runs, so a nested delivery can reuse the array
+                mMethod.invoke(target, args);
+
+            } catch (IllegalAccessException e) {
+                Log.e(TAG, e.getMessage(), e);
+
+            } catch (InvocationTargetException e) {
+                Log.e(TAG, e.getMessage(), e);
+
+            } finally {
+                if (mainThread) {
+                    // don't keep the result alive
+                    Arrays.fill(args, null);
+                }
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof ReflectionInvoker && mMethod.equals(((ReflectionInvoker) o).mMethod);
+        }
+
+        @Override
+        public int hashCode() {
+            return mMethod.hashCode();
+        }
+    }
+
+    private static final class DispatcherInvoker extends MethodInvoker {
+
+        private final TaskResultDispatcher mDispatcher;
+        private final int mIndex;
+
+        private DispatcherInvoker(TaskResultDispatcher dispatcher, int index) {
+            mDispatcher = dispatcher;
+            mIndex = index;
+        }
+
+        @Override
+        public void invoke(Object target, Object result, Task<?> task) {
+            try {
+                mDispatcher.dispatch(target, mIndex, result, task);
+            } catch (RuntimeException e) {
+                // same behavior as the reflection path, which logs the InvocationTargetException
+                Log.e(TAG, e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof DispatcherInvoker)) {
+                return false;
+            }
+            DispatcherInvoker that = (DispatcherInvoker) o;
+            return mIndex == that.mIndex && mDispatcher == that.mDispatcher;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * mDispatcher.hashCode() + mIndex;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package net.vrallev.android.task;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only journal in a memory mapped file. Appending a record only writes to memory, the kernel keeps the
+ * pages, if the process is killed. Each record is written first and committed by writing its length afterwards,
+ * so that a record interrupted by the process dying is ignored on the next start. Removed records are marked
+ * with a tombstone. The activity hash of a record is a fixed header field, it's overwritten in place when the
+ * activity is recreated. Once the journal is empty it starts from the beginning again, and when most of it are
+ * dead records, the live records are copied into a new file, which replaces the old one.
+ *
+ * <pre>
+ * record    := length:int body
+ * body      := PUT id:long sessionId:long activityHash:int timestamp:long payloadLength:int payload
+ *            | TOMBSTONE id:long
+ * </pre>
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class PendingResultJournal {
+
+    private static final String TAG = "PendingResultJournal";
+
+    private static final int INITIAL_SIZE = 16 * 1024;
+    private static final int COMPACT_THRESHOLD = 64 * 1024;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_TOMBSTONE = 2;
+
+    private static final int PUT_HEADER_SIZE = 1 + 8 + 8 + 4 + 8 + 4;
+    private static final int TOMBSTONE_SIZE = 1 + 8;
+
+    // length, type, id and session ID precede the activity hash
+    private static final int ACTIVITY_HASH_OFFSET = 4 + 1 + 8 + 8;
+
+    /*package*/ static final class Record {
+
+        private final long mId;
+        private final long mSessionId;
+        private final int mActivityHash;
+        private final long mTimestamp;
+        private final byte[] mPayload;
+        private final int mPosition;
+
+        private Record(long id, long sessionId, int activityHash, long timestamp, byte[] payload, int position) {
+            mId = id;
+            mSessionId = sessionId;
+            mActivityHash = activityHash;
+            mTimestamp = timestamp;
+            mPayload = payload;
+            mPosition = position;
+        }
+
+        public long getId() {
+            return mId;
+        }
+
+        public long getSessionId() {
+            return mSessionId;
+        }
+
+        public int getActivityHash() {
+            return mActivityHash;
+        }
+
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        public byte[] getPayload() {
+            return mPayload;
+        }
+
+        private int getSize() {
+            return 4 + PUT_HEADER_SIZE + mPayload.length;
+        }
+
+        private Record copy(int activityHash, int position) {
+            return new Record(mId, mSessionId, activityHash, mTimestamp, mPayload, position);
+        }
+    }
+
+    private final File mFile;
+    private final Map<Long, Record> mRecords;
+
+    private RandomAccessFile mRandomAccessFile;
+    private MappedByteBuffer mBuffer;
+    private int mPosition;
+    private int mDeadBytes;
+    private long mNextId;
+
+    public PendingResultJournal(File file) throws IOException {
+        mFile = file;
+        mRecords = new LinkedHashMap<>();
+
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Couldn't create " + parent);
+        }
+
+        map(Math.max(INITIAL_SIZE, (int) Math.min(Integer.MAX_VALUE, file.length())));
+        load();
+    }
+
+    /**
+     * @return The ID of the new record.
+     */
+    public synchronized long append(long sessionId, int activityHash, long timestamp, byte[] payload) throws IOException {
+        // the record starts at the current end of the journal
+        Record record = new Record(mNextId++, sessionId, activityHash, timestamp, payload, mPosition);
+        write(record);
+        mRecords.put(record.getId(), record);
+        return record.getId();
+    }
+
+    /**
+     * Points the record to another activity of the same session without copying it.
+     */
+    public synchronized void updateActivityHash(long id, int activityHash) {
+        Record record = mRecords.get(id);
+        if (record == null || record.getActivityHash() == activityHash) {
+            return;
+        }
+
+        mBuffer.putInt(record.mPosition + ACTIVITY_HASH_OFFSET, activityHash);
+        mRecords.put(id, record.copy(activityHash, record.mPosition));
+    }
+
+    public synchronized void remove(long id) throws IOException {
+        Record record = mRecords.remove(id);
+        if (record == null) {
+            return;
+        }
+
+        if (mRecords.isEmpty()) {
+            // nothing left, start from the beginning, the end marker hides the old records
+            mBuffer.putInt(0, 0);
+            mPosition = 0;
+            mDeadBytes = 0;
+            return;
+        }
+
+        int start = beginRecord(TOMBSTONE_SIZE);
+        mBuffer.put(TYPE_TOMBSTONE);
+        mBuffer.putLong(id);
+        commitRecord(start);
+
+        mDeadBytes += record.getSize() + 4 + TOMBSTONE_SIZE;
+        if (mDeadBytes > COMPACT_THRESHOLD && mDeadBytes > mPosition / 2) {
+            compact();
+        }
+    }
+
+    public synchronized List<Record> getRecords() {
+        return Collections.unmodifiableList(new ArrayList<>(mRecords.values()));
+    }
+
+    public synchronized List<Record> getRecords(long sessionId, int activityHash) {
+        List<Record> result = new ArrayList<>();
+        for (Record record : mRecords.values()) {
+            if (record.getSessionId() == sessionId && record.getActivityHash() == activityHash) {
+                result.add(record);
+            }
+        }
+        return result;
+    }
+
+    private void load() throws IOException {
+        int position = 0;
+        int capacity = mBuffer.capacity();
+
+        while (position + 4 <= capacity) {
+            int length = mBuffer.getInt(position);
+            if (length <= 0 || position + 4 + length > capacity) {
+                break;
+            }
+
+            mBuffer.position(position + 4);
+            byte type = mBuffer.get();
+            if (type == TYPE_PUT && length >= PUT_HEADER_SIZE) {
+                long id = mBuffer.getLong();
+                long sessionId = mBuffer.getLong();
+                int activityHash = mBuffer.getInt();
+                long timestamp = mBuffer.getLong();
+                int payloadLength = mBuffer.getInt();
+                if (payloadLength < 0 || payloadLength != length - PUT_HEADER_SIZE) {
+                    break;
+                }
+                byte[] payload = new byte[payloadLength];
+                mBuffer.get(payload);
+
+                mRecords.put(id, new Record(id, sessionId, activityHash, timestamp, payload, position));
+                mNextId = Math.max(mNextId, id + 1);
+
+            } else if (type == TYPE_TOMBSTONE && length == TOMBSTONE_SIZE) {
+                Record record = mRecords.remove(mBuffer.getLong());
+                if (record != null) {
+                    mDeadBytes += record.getSize();
+                }
+                mDeadBytes += 4 + TOMBSTONE_SIZE;
+
+            } else {
+                // corrupted, everything behind is ignored and overwritten
+                break;
+            }
+
+            position += 4 + length;
+        }
+
+        mPosition = position;
+        ensureCapacity(4);
+        mBuffer.putInt(mPosition, 0);
+    }
+
+    private void write(Record record) throws IOException {
+        int start = beginRecord(PUT_HEADER_SIZE + record.getPayload().length);
+        mBuffer.put(TYPE_PUT);
+        mBuffer.putLong(record.getId());
+        mBuffer.putLong(record.getSessionId());
+        mBuffer.putInt(record.getActivityHash());
+        mBuffer.putLong(record.getTimestamp());
+        mBuffer.putInt(record.getPayload().length);
+        mBuffer.put(record.getPayload());
+        commitRecord(start);
+    }
+
+    private int beginRecord(int length) throws IOException {
+        // length, body and the end marker of the next record
+        ensureCapacity(4 + length + 4);
+
+        int start = mPosition;
+        mBuffer.position(start + 4);
+        return start;
+    }
+
+    private void commitRecord(int start) {
+        int end = mBuffer.position();
+
+        // mark the end first, then make the record visible by writing its length
+        mBuffer.putInt(end, 0);
+        mBuffer.putInt(start, end - start - 4);
+        mPosition = end;
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        int capacity = mBuffer.capacity();
+        if (mPosition + length <= capacity) {
+            return;
+        }
+
+        long newSize = Math.max((long) capacity * 2, (long) mPosition + length);
+        if (newSize > Integer.MAX_VALUE) {
+            throw new IOException("Journal is full");
+        }
+        map((int) newSize);
+    }
+
+    private void compact() throws IOException {
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        if (tempFile.exists() && !tempFile.delete()) {
+            throw new IOException("Couldn't delete " + tempFile);
+        }
+
+        List<Record> records = new ArrayList<>(mRecords.values());
+        try {
+            PendingResultJournal compacted = new PendingResultJournal(tempFile);
+            try {
+                for (Record record : records) {
+                    compacted.write(record);
+                }
+            } finally {
+                compacted.close();
+            }
+
+            if (!tempFile.renameTo(mFile)) {
+                throw new IOException("Couldn't replace " + mFile);
+            }
+        } catch (IOException e) {
+            // the old journal is still mapped and complete, keep using it
+            if (tempFile.exists() && !tempFile.delete()) {
+                Log.w(TAG, "Couldn't delete " + tempFile);
+            }
+            throw e;
+        }
+
+        // the old mapping still points to the replaced file
+        map(Math.max(INITIAL_SIZE, (int) mFile.length()));
+        mPosition = 0;
+        for (Record record : records) {
+            mRecords.put(record.getId(), record.copy(record.getActivityHash(), mPosition));
+            mPosition += record.getSize();
+        }
+        mDeadBytes = 0;
+    }
+
+    private void map(int size) throws IOException {
+        close();
+
+        mRandomAccessFile = new RandomAccessFile(mFile, "rw");
+        if (mRandomAccessFile.length() < size) {
+            mRandomAccessFile.setLength(size);
+        }
+        mBuffer = mRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void close() throws IOException {
+        if (mRandomAccessFile != null) {
+            mRandomAccessFile.close();
+            mRandomAccessFile = null;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package net.vrallev.android.task;
+
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps finished results, which are waiting for their activity, in a {@link PendingResultJournal}. If the process
+ * is killed, then the results are restored for the recreated activity, which is found by the activity hash and
+ * session ID written to its saved state. Results older than a day are dropped.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class PendingResultStore {
+
+    private static final String TAG = "PendingResultStore";
+
+    private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    /*package*/ static final class PendingResult {
+
+        private final long mRecordId;
+        private final Task<?> mTask;
+        private final String mAnnotationId;
+        private final FragmentId mFragmentId;
+        private final Object mResult;
+
+        private PendingResult(long recordId, Task<?> task, String annotationId, FragmentId fragmentId, Object result) {
+            mRecordId = recordId;
+            mTask = task;
+            mAnnotationId = annotationId;
+            mFragmentId = fragmentId;
+            mResult = result;
+        }
+
+        public long getRecordId() {
+            return mRecordId;
+        }
+
+        public Task<?> getTask() {
+            return mTask;
+        }
+
+        public String getAnnotationId() {
+            return mAnnotationId;
+        }
+
+        public FragmentId getFragmentId() {
+            return mFragmentId;
+        }
+
+        public Object getResult() {
+            return mResult;
+        }
+    }
+
+    private final PendingResultJournal mJournal;
+
+    public PendingResultStore(File file) throws IOException {
+        mJournal = new PendingResultJournal(file);
+
+        long now = System.currentTimeMillis();
+        for (PendingResultJournal.Record record : mJournal.getRecords()) {
+            if (now - record.getTimestamp() > MAX_AGE_MILLIS || now < record.getTimestamp()) {
+                // the activity was never restored
+                mJournal.remove(record.getId());
+            }
+        }
+    }
+
+    /**
+     * @return The ID of the record or {@code -1}, if the result wasn't persisted.
+     */
+    @SuppressWarnings("unchecked")
+    public long persist(Task<?> task, long sessionId, int activityHash) {
+        ResultSerializer<Object> serializer = (ResultSerializer<Object>) task.getResultSerializer();
+        if (serializer == null) {
+            return -1;
+        }
+
+        if (!hasDefaultConstructor(task.getClass()) || !hasDefaultConstructor(serializer.getClass())) {
+            Log.w(TAG, "Task and serializer need a constructor without arguments to be restored, " + task.getClass().getName());
+            return -1;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+
+            out.writeUTF(task.getClass().getName());
+            out.writeUTF(serializer.getClass().getName());
+            writeNullableString(out, task.getAnnotationId());
+
+            FragmentId fragmentId = task.getFragmentId();
+            out.writeBoolean(fragmentId != null);
+            if (fragmentId != null) {
+                int[] indexPath = fragmentId.getIndexPath();
+                out.writeInt(indexPath.length);
+                for (int index : indexPath) {
+                    out.writeInt(index);
+                }
+                out.writeInt(fragmentId.getId());
+                writeNullableString(out, fragmentId.getTag());
+            }
+
+            byte[] result = serializer.serialize(task.getResult());
+            out.writeInt(result.length);
+            out.write(result);
+            out.close();
+
+            return mJournal.append(sessionId, activityHash, System.currentTimeMillis(), bytes.toByteArray());
+
+        } catch (Exception e) {
+            Log.e(TAG, e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Points the stored result to the recreated activity.
+     */
+    public void updateActivityHash(long recordId, int activityHash) {
+        mJournal.updateActivityHash(recordId, activityHash);
+    }
+
+    public void remove(long recordId) {
+        try {
+            mJournal.remove(recordId);
+        } catch (IOException e) {
+            Log.e(TAG, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Restores the results of the activity with the given hash from an earlier session. The records stay in the
+     * journal until they are removed.
+     */
+    public List<PendingResult> restore(long sessionId, int activityHash) {
+        List<PendingResult> results = new ArrayList<>();
+
+        for (PendingResultJournal.Record record : mJournal.getRecords(sessionId, activityHash)) {
+            try {
+                results.add(read(record));
+            } catch (Exception e) {
+                Log.e(TAG, e.getMessage(), e);
+                remove(record.getId());
+            }
+        }
+
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PendingResult read(PendingResultJournal.Record record) throws Exception {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.getPayload()));
+
+        Task<?> task = (Task<?>) newInstance(in.readUTF());
+        ResultSerializer<Object> serializer = (ResultSerializer<Object>) newInstance(in.readUTF());
+        String annotationId = readNullableString(in);
+
+        FragmentId fragmentId = null;
+        if (in.readBoolean()) {
+            int[] indexPath = new int[in.readInt()];
+            for (int i = 0; i < indexPath.length; i++) {
+                indexPath[i] = in.readInt();
+            }
+            fragmentId = new FragmentId(indexPath, in.readInt(), readNullableString(in));
+        }
+
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+
+        return new PendingResult(record.getId(), task, annotationId, fragmentId, serializer.deserialize(result));
+    }
+
+    /*package*/ static Object newInstance(String className) throws Exception {
+        Constructor<?> constructor = Class.forName(className, true, PendingResultStore.class.getClassLoader()).getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return constructor.newInstance();
+    }
+
+    /*package*/ static boolean hasDefaultConstructor(Class<?> clazz) {
+        try {
+            clazz.getDeclaredConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
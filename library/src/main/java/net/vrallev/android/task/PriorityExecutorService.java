@@ -0,0 +1,124 @@
+package net.vrallev.android.task;
+
+import java.util.Comparator;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool, which starts queued runnables by their {@link TaskPriority} and in FIFO order within the same
+ * priority.
+ *
+ * @author rwondratschek
+ */
+/*package*/ final class PriorityExecutorService extends ThreadPoolExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    private static final Comparator<Runnable> COMPARATOR = new Comparator<Runnable>() {
+        @Override
+        public int compare(Runnable lhs, Runnable rhs) {
+            QueueEntry left = (QueueEntry) lhs;
+            QueueEntry right = (QueueEntry) rhs;
+
+            int result = left.getPriority().compareTo(right.getPriority());
+            if (result != 0) {
+                return result;
+            }
+            return left.getSequence() < right.getSequence() ? -1 : (left.getSequence() == right.getSequence() ? 0 : 1);
+        }
+    };
+
+    /*package*/ interface Prioritized {
+        TaskPriority getPriority();
+    }
+
+    private interface QueueEntry extends Prioritized {
+        long getSequence();
+    }
+
+    private final AtomicLong mSequence;
+
+    public PriorityExecutorService(int workerCount) {
+        super(workerCount, workerCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(11, COMPARATOR));
+        allowCoreThreadTimeOut(true);
+        mSequence = new AtomicLong();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+
+        if (command instanceof QueueEntry) {
+            super.execute(command);
+        } else {
+            super.execute(new PrioritizedRunnable(command, getPriority(command), mSequence.getAndIncrement()));
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        // the future itself is queued, so that it can be removed from the queue when it's cancelled
+        return new PrioritizedFutureTask<>(runnable, value, getPriority(runnable), mSequence.getAndIncrement());
+    }
+
+    private static TaskPriority getPriority(Runnable runnable) {
+        TaskPriority priority = runnable instanceof Prioritized ? ((Prioritized) runnable).getPriority() : null;
+        return priority == null ? TaskPriority.USER_VISIBLE : priority;
+    }
+
+    private static final class PrioritizedRunnable implements Runnable, QueueEntry {
+
+        private final Runnable mRunnable;
+        private final TaskPriority mPriority;
+        private final long mSequence;
+
+        private PrioritizedRunnable(Runnable runnable, TaskPriority priority, long sequence) {
+            mRunnable = runnable;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            mRunnable.run();
+        }
+
+        @Override
+        public TaskPriority getPriority() {
+            return mPriority;
+        }
+
+        @Override
+        public long getSequence() {
+            return mSequence;
+        }
+    }
+
+    private static final class PrioritizedFutureTask<T> extends FutureTask<T> implements QueueEntry {
+
+        private final TaskPriority mPriority;
+        private final long mSequence;
+
+        private PrioritizedFutureTask(Runnable runnable, T result, TaskPriority priority, long sequence) {
+            super(runnable, result);
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public TaskPriority getPriority() {
+            return mPriority;
+        }
+
+        @Override
+        public long getSequence() {
+            return mSequence;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package net.vrallev.android.task;
+
+import java.io.IOException;
+
+/**
+ * Converts the result of a task to bytes and back, so that a result, which couldn't be delivered yet, survives
+ * the process being killed, see {@link Task#getResultSerializer()}. Implementations need a constructor without
+ * arguments, they are instantiated again in the new process.
+ *
+ * @author rwondratschek
+ */
+public interface ResultSerializer<RESULT> {
+
+    byte[] serialize(RESULT result) throws IOException;
+
+    RESULT deserialize(byte[] data) throws IOException;
+}
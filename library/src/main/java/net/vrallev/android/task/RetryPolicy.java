@@ -0,0 +1,172 @@
+package net.vrallev.android.task;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes a failed task again. If {@link Task#execute()} throws a retryable exception, then the task is
+ * submitted again after a backoff, which grows exponentially with each attempt. No worker thread is blocked
+ * during the backoff. The callback receives only the result of the last attempt, {@link Task#getResult()} blocks
+ * until then. A timeout set on the task includes all attempts.
+ *
+ * <pre>
+ * RetryPolicy policy = new RetryPolicy.Builder()
+ *         .setMaxAttempts(4)
+ *         .setBackoff(500, TimeUnit.MILLISECONDS)
+ *         .setRetryOn(IOException.class)
+ *         .build();
+ *
+ * new MyTask().setRetryPolicy(policy).start(this);
+ * </pre>
+ *
+ * @author rwondratschek
+ */
+@SuppressWarnings("unused")
+public final class RetryPolicy {
+
+    private static final Random RANDOM = new Random();
+
+    private final int mMaxAttempts;
+    private final long mBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final double mMultiplier;
+    private final double mJitter;
+    private final Class<? extends Throwable>[] mRetryOn;
+
+    private RetryPolicy(Builder builder) {
+        mMaxAttempts = builder.mMaxAttempts;
+        mBackoffMillis = builder.mBackoffMillis;
+        mMaxBackoffMillis = builder.mMaxBackoffMillis;
+        mMultiplier = builder.mMultiplier;
+        mJitter = builder.mJitter;
+        mRetryOn = builder.mRetryOn;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * @param throwable The exception thrown by the task.
+     * @param attempt The number of the failed attempt, starting at 1.
+     * @return Whether the task should be executed again.
+     */
+    public boolean shouldRetry(Throwable throwable, int attempt) {
+        if (attempt >= mMaxAttempts) {
+            return false;
+        }
+        for (Class<? extends Throwable> clazz : mRetryOn) {
+            if (clazz.isInstance(throwable)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param attempt The number of the failed attempt, starting at 1.
+     * @return The time to wait before the next attempt.
+     */
+    public long getBackoffMillis(int attempt) {
+        double backoff = Math.min(mBackoffMillis * Math.pow(mMultiplier, attempt - 1), mMaxBackoffMillis);
+        if (mJitter > 0) {
+            // spread the retries of many clients failing at the same time
+            backoff *= 1 - mJitter + 2 * mJitter * RANDOM.nextDouble();
+        }
+        return Math.max(0, Math.round(backoff));
+    }
+
+    public static final class Builder {
+
+        private int mMaxAttempts = 3;
+        private long mBackoffMillis = TimeUnit.SECONDS.toMillis(1);
+        private long mMaxBackoffMillis = TimeUnit.MINUTES.toMillis(1);
+        private double mMultiplier = 2;
+        private double mJitter = 0.2;
+        private Class<? extends Throwable>[] mRetryOn;
+
+        public Builder() {
+            mRetryOn = newClassArray(1);
+            mRetryOn[0] = Exception.class;
+        }
+
+        /**
+         * @param maxAttempts The number of executions including the first one, the default is 3.
+         * @return This builder.
+         */
+        public Builder setMaxAttempts(int maxAttempts) {
+            if (maxAttempts <= 0) {
+                throw new IllegalArgumentException("maxAttempts must be greater than 0");
+            }
+            mMaxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param backoff The time to wait before the second attempt, the default is one second.
+         * @param unit The unit of {@code backoff}.
+         * @return This builder.
+         */
+        public Builder setBackoff(long backoff, TimeUnit unit) {
+            mBackoffMillis = unit.toMillis(backoff);
+            return this;
+        }
+
+        /**
+         * @param maxBackoff The upper bound for the time between two attempts, the default is one minute.
+         * @param unit The unit of {@code maxBackoff}.
+         * @return This builder.
+         */
+        public Builder setMaxBackoff(long maxBackoff, TimeUnit unit) {
+            mMaxBackoffMillis = unit.toMillis(maxBackoff);
+            return this;
+        }
+
+        /**
+         * @param multiplier The factor applied to the backoff after each attempt, the default is 2.
+         * @return This builder.
+         */
+        public Builder setMultiplier(double multiplier) {
+            if (multiplier < 1) {
+                throw new IllegalArgumentException("multiplier must be at least 1");
+            }
+            mMultiplier = multiplier;
+            return this;
+        }
+
+        /**
+         * @param jitter The backoff is randomly changed by up to this fraction, the default is 0.2.
+         * @return This builder.
+         */
+        public Builder setJitter(double jitter) {
+            if (jitter < 0 || jitter > 1) {
+                throw new IllegalArgumentException("jitter must be between 0 and 1");
+            }
+            mJitter = jitter;
+            return this;
+        }
+
+        /**
+         * @param retryOn Only exceptions of these types are retried, the default is any {@link Exception}.
+         * @return This builder.
+         */
+        @SafeVarargs
+        public final Builder setRetryOn(Class<? extends Throwable>... retryOn) {
+            Class<? extends Throwable>[] copy = newClassArray(retryOn.length);
+            for (int i = 0; i < retryOn.length; i++) {
+                copy[i] = retryOn[i];
+            }
+            mRetryOn = copy;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Class<? extends Throwable>[] newClassArray(int length) {
+            return new Class[length];
+        }
+    }
+}
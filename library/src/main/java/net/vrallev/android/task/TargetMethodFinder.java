@@ -6,14 +6,14 @@ import android.support.v4.app.DialogFragment;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.FragmentManager;
-import android.support.v4.util.LruCache;
-import android.text.TextUtils;
 import android.util.Log;
 import android.util.Pair;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author rwondratschek
@@ -23,38 +23,21 @@ import java.util.List;
 
     private static final String TAG = "TargetMethodFinder";
 
-    private static final LruCache<Class<?>, Class<?>> CACHE_RETURN_TYPE = new LruCache<Class<?>, Class<?>>(35) {
-        @Override
-        protected Class<?> create(Class<?> taskClass) {
-            return findReturnType(taskClass);
-        }
-    };
-
-    private static final LruCache<MethodHolderKey, MethodHolder> CACHE_METHOD = new LruCache<MethodHolderKey, MethodHolder>(35) {
-        @Override
-        protected MethodHolder create(MethodHolderKey key) {
-            return MethodHolder.obtain(findMethodInClass(key));
-        }
+    // findReturnType() never returns Object
+    private static final Class<?> NO_RETURN_TYPE = Object.class;
 
-        @Override
-        protected void entryRemoved(boolean evicted, MethodHolderKey key, MethodHolder oldValue, MethodHolder newValue) {
-            key.recycle();
-            if (oldValue != null) {
-                oldValue.recycle();
-            }
-        }
-    };
+    private static final ConcurrentMap<Class<?>, Class<?>> RETURN_TYPES = new ConcurrentHashMap<>();
 
-    private final Class<? extends TaskResult> mAnnotation;
+    private final Class<? extends Annotation> mAnnotation;
 
-    public TargetMethodFinder(Class<? extends TaskResult> annotation) {
+    public TargetMethodFinder(Class<? extends Annotation> annotation) {
         mAnnotation = annotation;
     }
 
     public Class<?> getResultType(Object result, Task<?> task) {
         Class<?> resultType = task.getResultClass();
         if (resultType == null) {
-            resultType = CACHE_RETURN_TYPE.get(task.getClass());
+            resultType = getReturnType(task.getClass());
         }
         if (resultType == null && result != null) {
             resultType = result.getClass();
@@ -66,24 +49,25 @@ import java.util.List;
         return resultType;
     }
 
-    public Pair<Method, Object> getMethod(Activity activity, Class<?> resultType, Task<?> task) {
+    /**
+     * Must be called on the main thread, the fragment managers are accessed directly.
+     */
+    public Pair<MethodInvoker, Object> getMethod(Activity activity, Class<?> resultType, Task<?> task) {
         if (activity == null) {
             Log.w(TAG, "Activity is null, can't find target");
             return null;
         }
 
-        Pair<Method, Object> pair;
+        Pair<MethodInvoker, Object> pair;
         if (activity instanceof FragmentActivity) {
-            pair = findMethodInActivityAndFragments((FragmentActivity) activity, resultType, mAnnotation, task, true);
-            if (pair == null) {
-                pair = findMethodInActivityAndFragments((FragmentActivity) activity, resultType, mAnnotation, task, false);
-            }
+            pair = findMethodInActivityAndFragments((FragmentActivity) activity, resultType, mAnnotation, task);
 
         } else {
             pair = findMethodInActivity(activity, activity.getClass(), resultType, mAnnotation, task);
         }
 
-        if (pair == null) {
+        if (pair == null && mAnnotation == TaskResult.class) {
+            // progress callbacks are optional, don't log them
             Object result = task.getResult();
             Log.w(TAG, String.format("Didn't find method, result type %s, result %s, annotationId %s, fragmentId %s",
                     resultType, result, task.getAnnotationId(), task.getFragmentId()));
@@ -91,26 +75,8 @@ import java.util.List;
         return pair;
     }
 
-    public void invoke(Pair<Method, Object> target, Object result, Task<?> task) {
-        invoke(target.first, target.second, result, task);
-    }
-
-    public void invoke(Method method, Object target, Object result, Task<?> task) {
-        // not sure why, but Lint doesn't like this collapse
-        //noinspection TryWithIdenticalCatches
-        try {
-            if (method.getParameterTypes().length == 2) {
-                method.invoke(target, result, task);
-            } else {
-                method.invoke(target, result);
-            }
-
-        } catch (IllegalAccessException e) {
-            Log.e(TAG, e.getMessage(), e);
-
-        } catch (InvocationTargetException e) {
-            Log.e(TAG, e.getMessage(), e);
-        }
+    public void invoke(Pair<MethodInvoker, Object> target, Object result, Task<?> task) {
+        target.first.invoke(target.second, result, task);
     }
 
     /*
@@ -122,25 +88,36 @@ import java.util.List;
     }
     */
 
-    private static Pair<Method, Object> findMethodInActivityAndFragments(FragmentActivity activity, Class<?> resultType,
-                                                                         Class<? extends TaskResult> annotation, Task<?> task, boolean compareFragmentIndex) {
+    private static Pair<MethodInvoker, Object> findMethodInActivityAndFragments(FragmentActivity activity, Class<?> resultType,
+                                                                         Class<? extends Annotation> annotation, Task<?> task) {
 
-        Pair<Method, Object> pair = findMethodInActivity(activity, activity.getClass(), resultType, annotation, task);
+        Pair<MethodInvoker, Object> pair = findMethodInActivity(activity, activity.getClass(), resultType, annotation, task);
         if (pair != null) {
             return pair;
         }
 
-        return findMethodInFragmentManager(FragmentHack.getFragmentManager(activity), resultType, annotation, task, compareFragmentIndex);
+        FragmentSearch search = new FragmentSearch(resultType, annotation, task);
+        FragmentIndex index = FragmentIndex.forActivity(activity);
+        if (index != null && task.getFragmentId() != null) {
+            pair = search.findExactMatch(index.getFragments(task.getFragmentId()));
+            if (pair != null) {
+                return pair;
+            }
+        }
+
+        // the relaxed match is the first one in the fragment tree, the index doesn't know that order
+        pair = search.findInFragmentManager(FragmentHack.getFragmentManager(activity));
+        return pair != null ? pair : search.mRelaxedMatch;
     }
 
-    private static Pair<Method, Object> findMethodInActivity(Activity activity, Class<?> target, Class<?> resultType,
-                                                             Class<? extends TaskResult> annotation, Task<?> task) {
+    private static Pair<MethodInvoker, Object> findMethodInActivity(Activity activity, Class<?> target, Class<?> resultType,
+                                                             Class<? extends Annotation> annotation, Task<?> task) {
 
         if (target.equals(FragmentActivity.class) || target.equals(Activity.class)) {
             return null;
         }
 
-        Method method = findMethodInClass(target, resultType, annotation, task);
+        MethodInvoker method = findMethodInClass(target, resultType, annotation, task);
         if (method != null) {
             return new Pair<>(method, (Object) activity);
         }
@@ -148,124 +125,116 @@ import java.util.List;
         return findMethodInActivity(activity, target.getSuperclass(), resultType, annotation, task);
     }
 
-    private static Pair<Method, Object> findMethodInFragment(Fragment fragment, Class<?> target, Class<?> resultType,
-                                                             Class<? extends TaskResult> annotation, Task<?> task, boolean compareFragmentIndex) {
-
+    private static MethodInvoker findMethodInFragment(Class<?> target, Class<?> resultType, Class<? extends Annotation> annotation, Task<?> task) {
         if (target.equals(Fragment.class) || target.equals(DialogFragment.class)) {
             return null;
         }
 
-        final String fragmentId = task.getFragmentId();
-        final boolean useFragmentId = !TextUtils.isEmpty(fragmentId);
-
-        if (!useFragmentId || FragmentIdHelper.equals(fragmentId, FragmentIdHelper.getFragmentId(fragment), compareFragmentIndex)) {
-            Method method = findMethodInClass(target, resultType, annotation, task);
-            if (method != null) {
-                return new Pair<>(method, (Object) fragment);
-            }
-
-            Pair<Method, Object> pair = findMethodInFragment(fragment, target.getSuperclass(), resultType, annotation, task, compareFragmentIndex);
-            if (pair != null) {
-                return pair;
-            }
+        MethodInvoker method = findMethodInClass(target, resultType, annotation, task);
+        if (method != null) {
+            return method;
         }
 
-        return findMethodInFragmentManager(FragmentHack.getChildFragmentManager(fragment), resultType, annotation, task, compareFragmentIndex);
+        return findMethodInFragment(target.getSuperclass(), resultType, annotation, task);
     }
 
-    @SuppressLint("RestrictedApi")
-    private static Pair<Method, Object> findMethodInFragmentManager(FragmentManager fragmentManager, Class<?> resultType,
-                                                                    Class<? extends TaskResult> annotation, Task<?> task, boolean compareFragmentIndex) {
-
-        if (fragmentManager == null) {
-            return null;
+    /**
+     * Checks the candidates from the {@link FragmentIndex} for a fragment with the same index path as the task's
+     * fragment or walks the fragment tree once. The walk returns an exact match immediately, otherwise the first
+     * fragment matching only the ID and tag is remembered, e.g. after the indices shifted during a configuration
+     * change.
+     */
+    private static final class FragmentSearch {
+
+        private final Class<?> mResultType;
+        private final Class<? extends Annotation> mAnnotation;
+        private final Task<?> mTask;
+        private final FragmentId mFragmentId;
+
+        private Pair<MethodInvoker, Object> mRelaxedMatch;
+
+        private FragmentSearch(Class<?> resultType, Class<? extends Annotation> annotation, Task<?> task) {
+            mResultType = resultType;
+            mAnnotation = annotation;
+            mTask = task;
+            mFragmentId = task.getFragmentId();
         }
 
-        List<Fragment> fragments = fragmentManager.getFragments();
-        if (fragments == null) {
-            return null;
-        }
-
-        for (Fragment childFragment : fragments) {
-            if (childFragment == null || childFragment.getActivity() == null) {
-                continue;
+        @SuppressLint("RestrictedApi")
+        private Pair<MethodInvoker, Object> findInFragmentManager(FragmentManager fragmentManager) {
+            if (fragmentManager == null) {
+                return null;
             }
-            Pair<Method, Object> pair = findMethodInFragment(childFragment, childFragment.getClass(), resultType, annotation, task, compareFragmentIndex);
-            if (pair != null) {
-                return pair;
-            }
-        }
-
-        return null;
-    }
 
-    private static Method findMethodInClass(Class<?> target, Class<?> resultType, Class<? extends TaskResult> annotation, Task<?> task) {
-        if (resultType == null) {
-            return null;
-        }
-
-        MethodHolderKey methodHolderKey = MethodHolderKey.obtain(target, resultType, annotation, task);
-        return CACHE_METHOD.get(methodHolderKey).getMethod();
-    }
-
-    private static Method findMethodInClass(MethodHolderKey methodHolderKey) {
-        Class<?> target = methodHolderKey.getTarget();
-        Class<? extends TaskResult> annotation = methodHolderKey.getAnnotation();
-        Class<?> resultType = methodHolderKey.getResultType();
-        Class<? extends Task> taskClass = methodHolderKey.getTaskClass();
+            List<Fragment> fragments = fragmentManager.getFragments();
+            if (fragments == null) {
+                return null;
+            }
 
-        final String annotationId = methodHolderKey.getAnnotationId();
-        final boolean useAnnotationId = !TextUtils.isEmpty(annotationId);
+            for (Fragment childFragment : fragments) {
+                if (childFragment == null || childFragment.getActivity() == null) {
+                    continue;
+                }
+                Pair<MethodInvoker, Object> pair = findInFragment(childFragment);
+                if (pair != null) {
+                    return pair;
+                }
+            }
 
-        Method[] declaredMethods;
-        try {
-            declaredMethods = target.getDeclaredMethods();
-        } catch (Error e) {
-            Log.e(TAG, e.getMessage(), e);
             return null;
         }
 
-        if (declaredMethods == null) {
+        private Pair<MethodInvoker, Object> findExactMatch(List<Fragment> candidates) {
+            for (Fragment fragment : candidates) {
+                if (!FragmentIdHelper.matches(mFragmentId, fragment, true)) {
+                    continue;
+                }
+                MethodInvoker method = findMethodInFragment(fragment.getClass(), mResultType, mAnnotation, mTask);
+                if (method != null) {
+                    return new Pair<>(method, (Object) fragment);
+                }
+            }
             return null;
         }
 
-        Method candidate = null;
-
-        for (Method method : declaredMethods) {
-            if (!method.isAnnotationPresent(annotation)) {
-                continue;
-            }
-            if (useAnnotationId && !annotationId.equals(method.getAnnotation(annotation).id())) {
-                continue;
-            }
-            if (!useAnnotationId && !TextUtils.isEmpty(method.getAnnotation(annotation).id())) {
-                continue;
-            }
-
-            Class<?>[] parameterTypes = method.getParameterTypes();
-            if (parameterTypes.length == 0 || parameterTypes.length > 2) {
-                continue;
-            }
-            if (parameterTypes[0].isAssignableFrom(resultType)) {
-                if (candidate == null) {
-                    candidate = method;
-                } else {
-                    Log.w(TAG, "Found another method, which is ignored " + method.getName());
+        private Pair<MethodInvoker, Object> findInFragment(Fragment fragment) {
+            if (mFragmentId == null) {
+                MethodInvoker method = findMethodInFragment(fragment.getClass(), mResultType, mAnnotation, mTask);
+                if (method != null) {
+                    return new Pair<>(method, (Object) fragment);
                 }
-            }
 
-            if (!parameterTypes[0].equals(resultType)) {
-                continue;
+            } else if (FragmentIdHelper.matches(mFragmentId, fragment, false)) {
+                MethodInvoker method = findMethodInFragment(fragment.getClass(), mResultType, mAnnotation, mTask);
+                if (method != null) {
+                    if (FragmentIdHelper.matches(mFragmentId, fragment, true)) {
+                        return new Pair<>(method, (Object) fragment);
+                    }
+                    if (mRelaxedMatch == null) {
+                        mRelaxedMatch = new Pair<>(method, (Object) fragment);
+                    }
+                }
             }
 
-            if (parameterTypes.length == 2 && !parameterTypes[1].isAssignableFrom(taskClass)) {
-                continue;
-            }
+            return findInFragmentManager(FragmentHack.getChildFragmentManager(fragment));
+        }
+    }
 
-            return method;
+    private static MethodInvoker findMethodInClass(Class<?> target, Class<?> resultType, Class<? extends Annotation> annotation, Task<?> task) {
+        if (resultType == null) {
+            return null;
         }
 
-        return candidate;
+        return MethodIndex.forClass(target).find(annotation, task.getAnnotationId(), resultType, task.getClass());
+    }
+
+    private static Class<?> getReturnType(Class<?> taskClass) {
+        Class<?> returnType = RETURN_TYPES.get(taskClass);
+        if (returnType == null) {
+            returnType = findReturnType(taskClass);
+            RETURN_TYPES.put(taskClass, returnType == null ? NO_RETURN_TYPE : returnType);
+        }
+        return returnType == NO_RETURN_TYPE ? null : returnType;
     }
 
     private static Class<?> findReturnType(Class<?> taskClass) {
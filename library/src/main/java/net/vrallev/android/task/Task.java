@@ -12,7 +12,9 @@ import android.util.Log;
 import java.lang.ref.WeakReference;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author rwondratschek
@@ -25,15 +27,21 @@ public abstract class Task<RESULT> {
 
     private volatile boolean mCancelled;
     private volatile boolean mFinished;
+    private volatile TaskPriority mPriority;
+    private volatile long mTimeoutMillis;
+    private volatile boolean mTimedOut;
+    private volatile RetryPolicy mRetryPolicy;
 
     private int mKey = -1;
     private TaskExecutor mTaskExecutor;
     private Application mApplication;
     private WeakReference<Activity> mCachedActivity;
     private String mAnnotationId;
-    private String mFragmentId;
+    private FragmentId mFragmentId;
+    private volatile Task<?> mParent;
 
     private RESULT mResult;
+    private Throwable mFailure;
 
     public Task() {
         mCountDownLatch = new CountDownLatch(1);
@@ -54,8 +62,22 @@ public abstract class Task<RESULT> {
         }
     }
 
+    /*package*/ final TaskExecutor getTaskExecutor() {
+        synchronized (mMonitor) {
+            return mTaskExecutor;
+        }
+    }
+
+    /*package*/ final void setParent(Task<?> parent) {
+        mParent = parent;
+    }
+
     /*package*/ final void setCachedActivity(Activity activity) {
         synchronized (mMonitor) {
+            if (activity == null) {
+                mCachedActivity = null;
+                return;
+            }
             if (mApplication == null) {
                 mApplication = activity.getApplication();
             }
@@ -63,6 +85,12 @@ public abstract class Task<RESULT> {
         }
     }
 
+    /*package*/ final void setApplication(Application application) {
+        synchronized (mMonitor) {
+            mApplication = application;
+        }
+    }
+
     /*package*/ final void setAnnotationId(String annotationId) {
         synchronized (mMonitor) {
             mAnnotationId = annotationId;
@@ -75,28 +103,119 @@ public abstract class Task<RESULT> {
         }
     }
 
-    /*package*/ final void setFragmentId(String fragmentId) {
+    /*package*/ final void setFragmentId(FragmentId fragmentId) {
         synchronized (mMonitor) {
             mFragmentId = fragmentId;
         }
     }
 
-    /*package*/ final String getFragmentId() {
+    /*package*/ final FragmentId getFragmentId() {
         synchronized (mMonitor) {
             return mFragmentId;
         }
     }
 
     /*package*/ final RESULT executeInner() {
+        RESULT result = null;
+        Throwable failure = null;
         try {
-            mResult = execute();
+            result = execute();
         } catch (Throwable t) {
             Log.e("Task", getClass().getName() + " crashed", t);
+            failure = t;
+        }
+        setResult(result, failure);
+        return result;
+    }
+
+    /**
+     * Executes this task as stage of a composed task. Unlike {@link #executeInner()} a failure is rethrown, so that
+     * the composed task fails as well.
+     */
+    /*package*/ final RESULT executeStage() {
+        try {
+            RESULT result = execute();
+            setResult(result);
+            return result;
+        } catch (Throwable t) {
+            setResult(null, t);
+            throw t;
+        }
+    }
+
+    /**
+     * Executes this task once and sets the result, unless the attempt failed and should be retried.
+     *
+     * @param attempt The number of this attempt, starting at 1.
+     * @return {@code false} if this task should be executed again.
+     */
+    /*package*/ final boolean executeAttempt(int attempt) {
+        RESULT result = null;
+        Throwable failure = null;
+        try {
+            result = execute();
+        } catch (Throwable t) {
+            RetryPolicy retryPolicy = getRetryPolicy();
+            if (retryPolicy != null && !isCancelled() && retryPolicy.shouldRetry(t, attempt)) {
+                Log.w("Task", getClass().getName() + " failed in attempt " + attempt, t);
+                return false;
+            }
+            Log.e("Task", getClass().getName() + " crashed", t);
+            failure = t;
+        }
+
+        if (mTimedOut) {
+            // interrupted by the timeout, which sets its own result, don't race with it
+            return true;
+        }
+        setResult(result, failure);
+        return true;
+    }
+
+    /*package*/ final void setResult(RESULT result) {
+        setResult(result, null);
+    }
+
+    /**
+     * Like {@link #getResult()}, but a worker interrupted by a cancel still waits for the result, e.g. the one set
+     * by the timeout. The interruption is kept.
+     */
+    /*package*/ final RESULT getResultUninterruptibly() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                mCountDownLatch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
-        mCountDownLatch.countDown();
         return mResult;
     }
 
+    /*package*/ final void setResult(RESULT result, Throwable failure) {
+        synchronized (mMonitor) {
+            if (mCountDownLatch.getCount() == 0) {
+                // the first result wins, e.g. a timed out task finishing late
+                return;
+            }
+            mResult = result;
+            mFailure = failure;
+            mCountDownLatch.countDown();
+        }
+    }
+
+    /*package*/ final void setTimedOut() {
+        mTimedOut = true;
+    }
+
+    /*package*/ final long getTimeoutMillis() {
+        return mTimeoutMillis;
+    }
+
     /*package*/ final void setFinished() {
         mFinished = true;
     }
@@ -107,12 +226,112 @@ public abstract class Task<RESULT> {
         }
     }
 
+    /**
+     * Sets the priority used by the built-in bounded pool of the {@link TaskExecutor}. Must be called before
+     * the task is started.
+     *
+     * @param priority The new priority.
+     * @return This task for chaining calls.
+     */
+    public final Task<RESULT> setPriority(TaskPriority priority) {
+        mPriority = priority;
+        return this;
+    }
+
+    /**
+     * Sets a deadline for this task, measured from the moment the task is submitted to the executor, so the time
+     * waiting in the queue counts as well. If the task is still queued or running when the deadline passes, then
+     * it's cancelled, its worker is interrupted and the callback receives a {@code null} result with
+     * {@link #isTimedOut()} returning {@code true}. Tasks sharing the execution through {@link #getCoalescingKey()}
+     * don't inherit the deadline, if it passes, then they execute again on their own. Must be called before the task
+     * is started.
+     *
+     * @param timeout The maximum time, {@code 0} means no deadline.
+     * @param unit The unit of {@code timeout}.
+     * @return This task for chaining calls.
+     */
+    public final Task<RESULT> setTimeout(long timeout, TimeUnit unit) {
+        mTimeoutMillis = unit.toMillis(timeout);
+        return this;
+    }
+
+    public final boolean isTimedOut() {
+        return mTimedOut;
+    }
+
+    /**
+     * Executes this task again, if it fails with a retryable exception. Must be called before the task is started.
+     *
+     * @param retryPolicy The policy or {@code null} to never retry.
+     * @return This task for chaining calls.
+     */
+    public final Task<RESULT> setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+        return this;
+    }
+
+    /**
+     * Override this method to use the same retry policy for all instances of a task class.
+     *
+     * @return The policy, {@code null} by default, which means a failed task is never executed again.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return mRetryPolicy;
+    }
+
+    /**
+     * Override this method to use the same priority for all instances of a task class.
+     *
+     * @return The priority used by the built-in bounded pool. A stage of a composed task inherits the priority of
+     * the composed task, otherwise it's {@link TaskPriority#USER_VISIBLE} by default.
+     */
+    public TaskPriority getPriority() {
+        TaskPriority priority = mPriority;
+        if (priority != null) {
+            return priority;
+        }
+
+        Task<?> parent = mParent;
+        return parent == null ? TaskPriority.USER_VISIBLE : parent.getPriority();
+    }
+
+    /**
+     * Cancels this task. If the task didn't start yet, then it's removed from the queue and never executed.
+     * A running task needs to check {@link #isCancelled()}.
+     */
     public final void cancel() {
+        cancel(false);
+    }
+
+    /**
+     * Cancels this task. If the task didn't start yet, then it's removed from the queue and never executed.
+     *
+     * @param mayInterruptIfRunning Whether the worker thread of a running task should be interrupted.
+     */
+    public final void cancel(boolean mayInterruptIfRunning) {
+        mCancelled = true;
+
+        TaskExecutor taskExecutor = getTaskExecutor();
+        if (taskExecutor != null) {
+            taskExecutor.cancel(this, mayInterruptIfRunning);
+        }
+    }
+
+    /*package*/ final void setCancelled() {
         mCancelled = true;
     }
 
+    /*package*/ final void clearCancelled() {
+        mCancelled = false;
+    }
+
+    /**
+     * @return Whether this task, or the composed task it's a stage of, was cancelled. Only the state of the task
+     * is reported, check {@link Thread#interrupted()} in {@link #execute()} to react to an interruption.
+     */
     public final boolean isCancelled() {
-        return mCancelled || Thread.currentThread().isInterrupted();
+        Task<?> parent = mParent;
+        return mCancelled || parent != null && parent.isCancelled();
     }
 
     public RESULT getResult() {
@@ -124,6 +343,32 @@ public abstract class Task<RESULT> {
         return mResult;
     }
 
+    /**
+     * Waits at most the given time for the result.
+     *
+     * @return The result or {@code null}, if the task didn't finish in time.
+     */
+    public RESULT getResult(long timeout, TimeUnit unit) {
+        try {
+            if (!mCountDownLatch.await(timeout, unit)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Log.e("Task", "Interruption while waiting for result", e);
+        }
+        return mResult;
+    }
+
+    /**
+     * @return The exception thrown by {@link #execute()}, a {@link java.util.concurrent.TimeoutException}, if
+     * the task timed out, or {@code null}, if the task didn't fail or is still executing.
+     */
+    public final Throwable getFailure() {
+        synchronized (mMonitor) {
+            return mFailure;
+        }
+    }
+
     public final boolean isExecuting() {
         return mCountDownLatch.getCount() > 0;
     }
@@ -164,12 +409,57 @@ public abstract class Task<RESULT> {
         return mTaskExecutor.updateCallback(this, callback, annotationId);
     }
 
+    /**
+     * Publishes an intermediate value to the methods annotated with {@link TaskProgress}. Updates are conflated,
+     * at most one update per frame reaches the main thread and only the latest value is delivered.
+     *
+     * @param progress The progress value, must not be {@code null}.
+     */
+    protected final void publishProgress(Object progress) {
+        Task<?> parent = mParent;
+        if (parent != null) {
+            parent.publishProgress(progress);
+            return;
+        }
+
+        TaskExecutor taskExecutor = getTaskExecutor();
+        if (taskExecutor != null && progress != null) {
+            taskExecutor.publishProgress(this, progress);
+        }
+    }
+
     protected Class<RESULT> getResultClass() {
         return null;
     }
 
+    /**
+     * Override this method to keep a finished result, which is waiting for a stopped activity, on disk. If the
+     * process is killed, then the result is delivered to the recreated activity instead of being lost. Only used,
+     * if the {@link TaskExecutor} was built with {@link TaskExecutor.Builder#setResultPersistence(Context)}. This
+     * task and the serializer need a constructor without arguments, a new instance of this task is passed to the
+     * callback.
+     *
+     * @return The serializer for the result or {@code null}, if the result shouldn't be persisted.
+     */
+    protected ResultSerializer<RESULT> getResultSerializer() {
+        return null;
+    }
+
+    /**
+     * Override this method to share one execution between equal requests. If a task of the same class with an
+     * equal key is still running, then this task isn't executed, but receives the result of the running task.
+     * Each task still gets its own callback.
+     *
+     * @return A key implementing {@code equals()} and {@code hashCode()}, which describes the parameters of
+     * this task, or {@code null} to always execute this task.
+     */
+    protected Object getCoalescingKey() {
+        return null;
+    }
+
     protected final Activity getActivity() {
-        return mCachedActivity.get();
+        WeakReference<Activity> cachedActivity = mCachedActivity;
+        return cachedActivity == null ? null : cachedActivity.get();
     }
 
     protected final Context getApplicationContext() {
@@ -180,12 +470,22 @@ public abstract class Task<RESULT> {
         if (mFragmentId == null) {
             return null;
         }
-        Activity baseActivity = getActivity();
+        final Activity baseActivity = getActivity();
         if (!(baseActivity instanceof FragmentActivity)) {
             return null;
         }
 
-        return findFragment(FragmentHack.getFragmentManager((FragmentActivity) baseActivity));
+        // the index or the fragment managers are only accessed on the main thread
+        return FragmentHack.callOnMainThread(new Callable<Fragment>() {
+            @Override
+            public Fragment call() throws Exception {
+                FragmentIndex index = FragmentIndex.forActivity(baseActivity);
+                if (index != null) {
+                    return index.getFragment(mFragmentId);
+                }
+                return findFragment(FragmentHack.getFragmentManager((FragmentActivity) baseActivity));
+            }
+        });
     }
 
     @SuppressLint("RestrictedApi")
@@ -203,16 +503,13 @@ public abstract class Task<RESULT> {
             if (fragment == null) {
                 continue;
             }
-            String fragmentId = FragmentIdHelper.getFragmentId(fragment);
-            if (mFragmentId.equals(fragmentId)) {
+            if (FragmentIdHelper.matches(mFragmentId, fragment, true)) {
                 return fragment;
             }
 
-            if (FragmentHack.getChildFragmentManager(fragment) != null) {
-                Fragment child = findFragment(FragmentHack.getChildFragmentManager(fragment));
-                if (child != null) {
-                    return child;
-                }
+            Fragment child = findFragment(FragmentHack.getChildFragmentManager(fragment));
+            if (child != null) {
+                return child;
             }
         }
 
@@ -0,0 +1,11 @@
+package net.vrallev.android.task;
+
+/**
+ * Combines the results of two parallel stages, see {@link Tasks#zip(Task, Task, TaskCombiner)}.
+ *
+ * @author rwondratschek
+ */
+public interface TaskCombiner<FIRST, SECOND, RESULT> {
+
+    RESULT combine(FIRST first, SECOND second);
+}
@@ -3,24 +3,38 @@ package net.vrallev.android.task;
 import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.app.Application;
-import android.os.Bundle;
+import android.content.Context;
+import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentActivity;
+import android.util.Log;
 import android.util.Pair;
-import android.util.SparseArray;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * @author rwondratschek
@@ -32,6 +46,8 @@ public final class TaskExecutor {
 
     private static final AtomicInteger TASK_COUNTER = new AtomicInteger(0);
 
+    private static final Object NO_PROGRESS = new Object();
+
     @SuppressLint("StaticFieldLeak")
     private static volatile TaskExecutor instance;
 
@@ -49,50 +65,149 @@ public final class TaskExecutor {
         return instance;
     }
 
-    private ExecutorService mExecutorService;
+    private volatile ExecutorService mExecutorService;
     private final PostResult mPostResult;
-
-    private final SparseArray<Task<?>> mTasks;
-    private final SparseArray<WeakReference<TaskRunnable<?>>> mTaskRunnables;
+    private final BatchedDelivery mBatchedDelivery;
+    private final TaskMetrics mMetrics;
+    private final TaskTracer mTracer;
+    private final PendingResultStore mPendingResultStore;
+    private final DurableTaskStore mDurableTaskStore;
+
+    private final ConcurrentMap<Integer, Task<?>> mTasks;
+    private final ConcurrentMap<Integer, WeakReference<TaskRunnable<?>>> mTaskRunnables;
+    private final ConcurrentMap<Object, TaskRunnable<?>> mCoalescedRunnables;
+    private final Set<TaskRunnable<?>> mDetachedRunnables;
     private final TargetMethodFinder mTargetMethodFinder;
+    private final TargetMethodFinder mProgressMethodFinder;
+    private final TargetMethodFinder mFailureMethodFinder;
+    private final ActivityLifecycleDispatcher mLifecycleDispatcher;
+    private final Handler mHandler;
 
-    private Application mApplication;
+    private volatile Application mApplication;
+    private volatile WeakReference<Activity> mStartedActivity;
+    private final AtomicBoolean mDurableTasksResumed = new AtomicBoolean();
 
-    private TaskExecutor(ExecutorService executorService, PostResult postResult) {
+    private TaskExecutor(ExecutorService executorService, PostResult postResult, long frameBudgetNanos, TaskMetrics metrics, TaskTracer tracer,
+                         PendingResultStore pendingResultStore, DurableTaskStore durableTaskStore, Application application) {
         mExecutorService = executorService;
         mPostResult = postResult;
-
-        mTasks = new SparseArray<>();
-        mTaskRunnables = new SparseArray<>();
+        mBatchedDelivery = postResult == PostResult.UI_THREAD_BATCHED ? new BatchedDelivery(frameBudgetNanos) : null;
+        mMetrics = metrics;
+        mTracer = tracer;
+        mPendingResultStore = pendingResultStore;
+        mDurableTaskStore = durableTaskStore;
+
+        mTasks = new ConcurrentHashMap<>();
+        mTaskRunnables = new ConcurrentHashMap<>();
+        mCoalescedRunnables = new ConcurrentHashMap<>();
+        mDetachedRunnables = Collections.newSetFromMap(new ConcurrentHashMap<TaskRunnable<?>, Boolean>());
         mTargetMethodFinder = new TargetMethodFinder(TaskResult.class);
+        mProgressMethodFinder = new TargetMethodFinder(TaskProgress.class);
+        mFailureMethodFinder = new TargetMethodFinder(TaskFailure.class);
+        mLifecycleDispatcher = new ActivityLifecycleDispatcher(new ActivityLifecycleDispatcher.Listener() {
+            @Override
+            public void onActivityRestored(Activity activity, long sessionId, int activityHash) {
+                restorePendingResults(activity, sessionId, activityHash);
+            }
+
+            @Override
+            public void onActivityStarted(Activity activity) {
+                mStartedActivity = new WeakReference<>(activity);
+                for (TaskRunnable<?> taskRunnable : mDetachedRunnables) {
+                    taskRunnable.offerTo(activity);
+                }
+            }
+
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+                WeakReference<Activity> startedActivity = mStartedActivity;
+                if (startedActivity != null && startedActivity.get() == activity) {
+                    mStartedActivity = null;
+                }
+                for (TaskRunnable<?> taskRunnable : mDetachedRunnables) {
+                    taskRunnable.expireIfUnclaimed(activity);
+                }
+            }
+        });
+        mHandler = new Handler(Looper.getMainLooper());
+
+        if (application != null) {
+            // the restored activity is created before any task is started
+            registerApplication(application);
+        }
+        if (mDurableTaskStore != null) {
+            // the resumed tasks may use the singleton, wait until asSingleton() published this executor
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    resumeDurableTasks();
+                }
+            });
+        }
     }
 
-    public synchronized int execute(@NonNull Task<?> task, @NonNull Fragment callback) {
+    public int execute(@NonNull Task<?> task, @NonNull Fragment callback) {
         return execute(task, callback, null);
     }
 
-    public synchronized int execute(@NonNull Task<?> task, @NonNull Fragment callback, @Nullable String annotationId) {
+    public int execute(@NonNull Task<?> task, @NonNull Fragment callback, @Nullable String annotationId) {
         FragmentActivity activity = callback.getActivity();
         return executeInner(task, activity, annotationId, FragmentIdHelper.getFragmentId(callback));
     }
 
-    public synchronized int execute(@NonNull Task<?> task, @NonNull Activity callback) {
+    public int execute(@NonNull Task<?> task, @NonNull Activity callback) {
         return execute(task, callback, null);
     }
 
-    public synchronized int execute(@NonNull Task<?> task, @NonNull Activity callback, @Nullable String annotationId) {
+    public int execute(@NonNull Task<?> task, @NonNull Activity callback, @Nullable String annotationId) {
         return executeInner(task, callback, annotationId, null);
     }
 
-    private synchronized int executeInner(Task<?> task, Activity activity, String annotationId, String fragmentId) {
-        if (isShutdown()) {
+    private int executeInner(Task<?> task, Activity activity, String annotationId, FragmentId fragmentId) {
+        ExecutorService executorService = mExecutorService;
+        if (executorService == null) {
             return -1;
         }
 
         if (mApplication == null) {
-            mApplication = activity.getApplication();
+            registerApplication(activity.getApplication());
+        }
+
+        TaskRunnable<?> taskRunnable = registerTask(task, activity, annotationId, fragmentId);
+        if (mDurableTaskStore != null && task instanceof DurableTask) {
+            taskRunnable.mDurableRecordId = mDurableTaskStore.persist((DurableTask<?>) task);
+        }
+
+        return startTask(taskRunnable) ? task.getKey() : -1;
+    }
+
+    private boolean startTask(TaskRunnable<?> taskRunnable) {
+        Task<?> task = taskRunnable.mTask;
+        if (mTracer != null) {
+            mTracer.record(TaskTracer.Event.SUBMITTED, task);
+        }
+
+        Object coalescingKey = task.getCoalescingKey();
+        if (coalescingKey != null) {
+            taskRunnable.mCoalescingKey = Pair.create(task.getClass(), coalescingKey);
+            if (attachToRunningTask(taskRunnable)) {
+                taskRunnable.scheduleTimeout();
+                return true;
+            }
+        }
+
+        if (!submit(taskRunnable)) {
+            // shut down in the meantime
+            taskRunnable.cancelExecution(false);
+            cleanUpTask(taskRunnable);
+            return false;
         }
 
+        taskRunnable.scheduleTimeout();
+        return true;
+    }
+
+    private <T> TaskRunnable<T> registerTask(Task<T> task, Activity activity, String annotationId, FragmentId fragmentId) {
         int key = TASK_COUNTER.incrementAndGet();
 
         task.setKey(key);
@@ -103,35 +218,104 @@ public final class TaskExecutor {
 
         mTasks.put(key, task);
 
-        TaskRunnable<?> taskRunnable = new TaskRunnable<>(task, activity);
+        TaskRunnable<T> taskRunnable = new TaskRunnable<>(task, activity);
 
         mTaskRunnables.put(key, new WeakReference<TaskRunnable<?>>(taskRunnable));
+        return taskRunnable;
+    }
+
+    private void resumeDurableTasks() {
+        if (mDurableTaskStore == null || isShutdown() || !mDurableTasksResumed.compareAndSet(false, true)) {
+            return;
+        }
+
+        for (DurableTaskStore.StoredTask storedTask : mDurableTaskStore.restore()) {
+            DurableTask<?> task = storedTask.getTask();
+            task.setApplication(mApplication);
+
+            TaskRunnable<?> taskRunnable = registerTask(task, null, null, null);
+            taskRunnable.mDurableRecordId = storedTask.getRecordId();
+            taskRunnable.detach();
 
-        mApplication.registerActivityLifecycleCallbacks(taskRunnable);
-        mExecutorService.execute(taskRunnable);
+            startTask(taskRunnable);
+        }
+    }
+
+    private void restorePendingResults(Activity activity, long sessionId, int activityHash) {
+        if (mPendingResultStore == null || isShutdown()) {
+            return;
+        }
+
+        for (PendingResultStore.PendingResult pendingResult : mPendingResultStore.restore(sessionId, activityHash)) {
+            TaskRunnable<?> taskRunnable = registerTask(pendingResult.getTask(), activity, pendingResult.getAnnotationId(), pendingResult.getFragmentId());
+            taskRunnable.restoreResult(pendingResult.getResult());
 
-        return key;
+            // the result was stored again for the new activity
+            mPendingResultStore.remove(pendingResult.getRecordId());
+        }
     }
 
-    @SuppressWarnings("unchecked")
-    public synchronized Task<?> getTask(int key) {
-        if (mTasks.indexOfKey(key) < 0) {
-            return null;
-        } else {
-            return mTasks.get(key);
+    private boolean submit(TaskRunnable<?> taskRunnable) {
+        ExecutorService executorService = mExecutorService;
+        if (executorService == null) {
+            return false;
+        }
+
+        try {
+            taskRunnable.mFuture = executorService.submit(taskRunnable);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private boolean attachToRunningTask(TaskRunnable<?> taskRunnable) {
+        Object coalescingKey = taskRunnable.mCoalescingKey;
+        while (true) {
+            TaskRunnable<?> running = mCoalescedRunnables.putIfAbsent(coalescingKey, taskRunnable);
+            if (running == null) {
+                return false;
+            }
+            if (running.attach(taskRunnable)) {
+                return true;
+            }
+            // finished in the meantime
+            mCoalescedRunnables.remove(coalescingKey, running);
+        }
+    }
+
+    /*package*/ boolean fork(Runnable runnable) {
+        ExecutorService executorService = mExecutorService;
+        if (executorService == null) {
+            return false;
+        }
+
+        try {
+            executorService.execute(runnable);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
         }
     }
 
-    public synchronized List<Task<?>> getAllTasks() {
-        List<Task<?>> result = new ArrayList<>();
-        for (int i = 0; i < mTasks.size(); i++) {
-            result.add(mTasks.valueAt(i));
+    private synchronized void registerApplication(Application application) {
+        if (mApplication == null) {
+            application.registerActivityLifecycleCallbacks(mLifecycleDispatcher);
+            mApplication = application;
         }
-        return result;
     }
 
     @SuppressWarnings("unchecked")
-    public synchronized <T extends Task<?>> List<T> getAllTasks(Class<T> taskClass) {
+    public Task<?> getTask(int key) {
+        return mTasks.get(key);
+    }
+
+    public List<Task<?>> getAllTasks() {
+        return new ArrayList<>(mTasks.values());
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T extends Task<?>> List<T> getAllTasks(Class<T> taskClass) {
         List<Task<?>> list = getAllTasks();
         Iterator<Task<?>> iterator = list.iterator();
         while (iterator.hasNext()) {
@@ -142,13 +326,9 @@ public final class TaskExecutor {
         return (List<T>) list;
     }
 
-    private synchronized void removeTask(Task<?> task) {
-        int index = mTasks.indexOfValue(task);
-        if (index >= 0) {
-            mTasks.removeAt(index);
-        }
-
+    private void removeTask(Task<?> task) {
         int key = task.getKey();
+        mTasks.remove(key, task);
         mTaskRunnables.remove(key);
     }
 
@@ -156,10 +336,15 @@ public final class TaskExecutor {
         synchronized (TaskExecutor.class) {
             instance = this;
         }
+        resumeDurableTasks();
         return this;
     }
 
     public synchronized void shutdown() {
+        // the workers are interrupted, tell the running tasks to stop as well
+        for (Task<?> task : mTasks.values()) {
+            task.setCancelled();
+        }
         mExecutorService.shutdownNow();
         mExecutorService = null;
 
@@ -170,14 +355,39 @@ public final class TaskExecutor {
         }
     }
 
-    public synchronized boolean isShutdown() {
+    public boolean isShutdown() {
         return mExecutorService == null;
     }
 
-    /*package*/ void postResultNow(Pair<Method, Object> target, Object result, TaskRunnable<?> taskRunnable) {
-        cleanUpTask(taskRunnable);
+    /**
+     * @return The execution metrics or {@code null}, if they weren't enabled in the {@link Builder}.
+     */
+    public TaskMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * @return The tracer or {@code null}, if none was set in the {@link Builder}.
+     */
+    public TaskTracer getTracer() {
+        return mTracer;
+    }
+
+    /*package*/ void postResultNow(Pair<MethodInvoker, Object> target, Object result, TaskRunnable<?> taskRunnable) {
+        cleanUpTask(taskRunnable, TaskMetrics.Outcome.DELIVERED);
+
+        if (mTracer == null) {
+            mTargetMethodFinder.invoke(target, result, taskRunnable.mTask);
+            return;
+        }
 
-        mTargetMethodFinder.invoke(target, result, taskRunnable.mTask);
+        mTracer.record(TaskTracer.Event.DELIVERED, taskRunnable.mTask);
+        mTracer.beginDeliverySection(taskRunnable.mTask);
+        try {
+            mTargetMethodFinder.invoke(target, result, taskRunnable.mTask);
+        } finally {
+            mTracer.endSection();
+        }
     }
 
     /*package*/ boolean updateCallback(Task<?> task, Fragment callback, String annotationId) {
@@ -185,63 +395,470 @@ public final class TaskExecutor {
             return false;
         }
 
-        if (updateCallback(task, callback.getActivity(), annotationId)) {
-            task.setFragmentId(FragmentIdHelper.getFragmentId(callback));
-            return true;
-        } else {
+        FragmentActivity activity = callback.getActivity();
+        TaskRunnable<?> runnable = bindCallback(task, activity, annotationId);
+        if (runnable == null) {
             return false;
         }
+
+        task.setFragmentId(FragmentIdHelper.getFragmentId(callback));
+        runnable.onCallbackReplaced(activity);
+        return true;
     }
 
     /*package*/ boolean updateCallback(Task<?> task, Activity callback, String annotationId) {
-        if (task == null || callback == null) {
+        TaskRunnable<?> runnable = bindCallback(task, callback, annotationId);
+        if (runnable == null) {
             return false;
         }
 
-        WeakReference<TaskRunnable<?>> reference = mTaskRunnables.get(task.getKey());
-        if (reference == null) {
-            return false;
+        runnable.onCallbackReplaced(callback);
+        return true;
+    }
+
+    private TaskRunnable<?> bindCallback(Task<?> task, Activity callback, String annotationId) {
+        if (task == null || callback == null) {
+            return null;
         }
-        TaskRunnable<?> runnable = reference.get();
-        if (runnable == null || runnable.mPostingResult || runnable.mTask != task) {
-            return false;
+
+        TaskRunnable<?> runnable = getTaskRunnable(task);
+        if (runnable == null || runnable.mPostingResult) {
+            return null;
         }
 
         task.setCachedActivity(callback);
         task.setAnnotationId(annotationId);
         runnable.updateCallbackActivity(callback);
-        return true;
+        return runnable;
+    }
+
+    /*package*/ void cancel(Task<?> task, boolean mayInterruptIfRunning) {
+        TaskRunnable<?> runnable = getTaskRunnable(task);
+        if (runnable == null) {
+            return;
+        }
+
+        if (mDurableTaskStore != null) {
+            // cancelled on purpose, don't execute it again in the next process
+            runnable.removeDurableRecord();
+        }
+
+        if (runnable.cancelExecution(mayInterruptIfRunning) || runnable.mDetached && !task.isExecuting()) {
+            // never started or finished without callback, there is no result to deliver
+            cleanUpTask(runnable);
+        }
+    }
+
+    /*package*/ void publishProgress(Task<?> task, Object progress) {
+        TaskRunnable<?> runnable = getTaskRunnable(task);
+        if (runnable != null) {
+            runnable.publishProgress(progress);
+        }
+    }
+
+    private TaskRunnable<?> getTaskRunnable(Task<?> task) {
+        WeakReference<TaskRunnable<?>> reference = mTaskRunnables.get(task.getKey());
+        TaskRunnable<?> runnable = reference == null ? null : reference.get();
+        return runnable == null || runnable.mTask != task ? null : runnable;
     }
 
     private void cleanUpTask(TaskRunnable<?> taskRunnable) {
-        if (taskRunnable.mTask.isExecuting() && !taskRunnable.mTask.isCancelled()) {
-            taskRunnable.mTask.cancel();
+        cleanUpTask(taskRunnable, TaskMetrics.Outcome.DROPPED);
+    }
+
+    private void cleanUpTask(TaskRunnable<?> taskRunnable, TaskMetrics.Outcome outcome) {
+        if (mMetrics != null) {
+            taskRunnable.recordMetrics(outcome);
+        }
+        if (mTracer != null && outcome != TaskMetrics.Outcome.DELIVERED && !taskRunnable.mTask.isFinished()) {
+            mTracer.record(TaskTracer.Event.DROPPED, taskRunnable.mTask);
+        }
+        if (mPendingResultStore != null) {
+            taskRunnable.removePersistedResult();
+        }
+
+        if (taskRunnable.mTask.isExecuting() && !taskRunnable.mTask.isCancelled() && !taskRunnable.abandon()) {
+            // the callback is gone, stop using the CPU for it
+            taskRunnable.mTask.setCancelled();
+            taskRunnable.cancelExecution(true);
+        }
+
+        TaskRunnable<?> owner = taskRunnable.mOwner;
+        if (owner != null && owner.detachAttached(taskRunnable)) {
+            // the last caller waiting for the abandoned execution is gone
+            owner.mTask.setCancelled();
+            owner.cancelExecution(true);
         }
+
         taskRunnable.mTask.setFinished();
+        taskRunnable.cancelTimeout();
         removeTask(taskRunnable.mTask);
-        mApplication.unregisterActivityLifecycleCallbacks(taskRunnable);
+        mLifecycleDispatcher.unregister(taskRunnable);
+        mDetachedRunnables.remove(taskRunnable);
     }
 
-    private final class TaskRunnable<T> implements Runnable, Application.ActivityLifecycleCallbacks {
-
-        private static final String ACTIVITY_HASH = "ACTIVITY_HASH";
+    private final class TaskRunnable<T> implements Runnable, ActivityLifecycleDispatcher.Callback, PriorityExecutorService.Prioritized {
 
         private final Task<T> mTask;
 
-        private int mActivityHash;
+        private volatile int mActivityHash;
         private volatile boolean mCanSaveInstanceState;
         private volatile boolean mPostingResult;
 
+        private final AtomicBoolean mStarted;
+        private final AtomicBoolean mExecuted;
+        private volatile Future<?> mFuture;
+        private Runnable mTimeoutRunnable;
+
+        private final AtomicBoolean mRetryPending;
+        private int mAttempt;
+
+        private final AtomicReference<Object> mProgress;
+        private final AtomicBoolean mProgressScheduled;
+        private final Runnable mProgressRunnable;
+
+        private Object mCoalescingKey;
+        private List<TaskRunnable<?>> mAttachedRunnables;
+        private boolean mCoalescingCompleted;
+        private boolean mAbandoned;
+        private volatile TaskRunnable<?> mOwner;
+
+        private final long mSubmitNanos;
+        private volatile long mStartNanos = -1;
+        private volatile long mFinishNanos = -1;
+        private final AtomicBoolean mMetricsRecorded;
+
+        private long mPersistedRecordId = -1;
+        private long mDurableRecordId = -1;
+        private volatile boolean mDetached;
+        private volatile boolean mWasDetached;
+        private volatile int mClaimingActivityHash;
+
         private TaskRunnable(Task<T> task, Activity activity) {
             mTask = task;
-            updateCallbackActivity(activity);
+            mStarted = new AtomicBoolean();
+            mExecuted = new AtomicBoolean();
+            mRetryPending = new AtomicBoolean();
+            mSubmitNanos = mMetrics == null ? -1 : System.nanoTime();
+            mMetricsRecorded = new AtomicBoolean();
+
+            mProgress = new AtomicReference<>(NO_PROGRESS);
+            mProgressScheduled = new AtomicBoolean();
+            mProgressRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    deliverProgress();
+                }
+            };
+
+            if (activity != null) {
+                updateCallbackActivity(activity);
+            }
         }
 
         @Override
         public void run() {
-            final T result = mTask.executeInner();
+            boolean retry = mRetryPending.compareAndSet(true, false);
+            if (!retry && !mStarted.compareAndSet(false, true)) {
+                // cancelled before it started
+                return;
+            }
+
+            if (mMetrics != null && !retry) {
+                mStartNanos = System.nanoTime();
+            }
+            mAttempt++;
+
+            boolean completed;
+            if (mTracer == null) {
+                completed = mTask.executeAttempt(mAttempt);
+            } else {
+                mTracer.record(TaskTracer.Event.STARTED, mTask);
+                mTracer.beginExecutionSection(mTask);
+                try {
+                    completed = mTask.executeAttempt(mAttempt);
+                } finally {
+                    mTracer.endSection();
+                    mTracer.record(TaskTracer.Event.FINISHED, mTask);
+                }
+            }
+
+            if (completed) {
+                onExecuted(mTask.getResultUninterruptibly());
+            } else {
+                scheduleRetry();
+            }
+        }
+
+        private void scheduleRetry() {
+            long backoffMillis = mTask.getRetryPolicy().getBackoffMillis(mAttempt);
+            mRetryPending.set(true);
+
+            // wait on the main thread, so that the worker can run other tasks during the backoff
+            mHandler.postDelayed(new Runnable() {
+                @Override
+                public void run() {
+                    retry();
+                }
+            }, backoffMillis);
+        }
+
+        private void retry() {
+            if (!mRetryPending.get()) {
+                // cancelled during the backoff
+                return;
+            }
+            if (mTask.isCancelled() || !submit(this)) {
+                if (cancelExecution(false)) {
+                    cleanUpTask(this);
+                }
+            }
+        }
+
+        private void onExecuted(T result) {
+            if (!mExecuted.compareAndSet(false, true)) {
+                // timed out before, the timeout was delivered already
+                return;
+            }
+            if (mMetrics != null) {
+                mFinishNanos = System.nanoTime();
+            }
+            cancelTimeout();
+            if (mDurableTaskStore != null && !isShutdown()) {
+                // the work is done, a task interrupted by the shutdown runs again in the next process
+                removeDurableRecord();
+            }
+
+            List<TaskRunnable<?>> attachedRunnables = completeCoalescing();
+            deliverResult(result);
+
+            if (attachedRunnables != null) {
+                for (TaskRunnable<?> attachedRunnable : attachedRunnables) {
+                    attachedRunnable.deliverCoalescedResult(result, mTask.getFailure());
+                }
+            }
+        }
+
+        private synchronized boolean attach(TaskRunnable<?> taskRunnable) {
+            if (mCoalescingCompleted) {
+                return false;
+            }
+            if (mAttachedRunnables == null) {
+                mAttachedRunnables = new ArrayList<>();
+            }
+            mAttachedRunnables.add(taskRunnable);
+            taskRunnable.mOwner = this;
+            return true;
+        }
+
+        /**
+         * Called when the callback of this task is gone. A running execution shared with attached tasks keeps running
+         * for them and is cancelled, when the last of them is gone.
+         *
+         * @return {@code true} if the execution continues for the attached tasks.
+         */
+        private synchronized boolean abandon() {
+            if (!mStarted.get() || mRetryPending.get() || mAttachedRunnables == null || mAttachedRunnables.isEmpty()) {
+                // a queued execution is cancelled, the attached tasks are submitted on their own
+                return false;
+            }
+            mAbandoned = true;
+            return true;
+        }
+
+        /**
+         * @return {@code true} if this execution was abandoned and no attached task is left.
+         */
+        private synchronized boolean detachAttached(TaskRunnable<?> taskRunnable) {
+            if (mAttachedRunnables == null || !mAttachedRunnables.remove(taskRunnable)) {
+                return false;
+            }
+            return mAbandoned && mAttachedRunnables.isEmpty() && !mTask.isCancelled();
+        }
+
+        private List<TaskRunnable<?>> completeCoalescing() {
+            if (mCoalescingKey == null) {
+                return null;
+            }
+
+            List<TaskRunnable<?>> attachedRunnables;
+            synchronized (this) {
+                mCoalescingCompleted = true;
+                attachedRunnables = mAttachedRunnables;
+                mAttachedRunnables = null;
+            }
+
+            mCoalescedRunnables.remove(mCoalescingKey, this);
+            return attachedRunnables;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void deliverCoalescedResult(Object result, Throwable failure) {
+            if (!mStarted.compareAndSet(false, true)) {
+                return;
+            }
+
+            // same task class, hence same result type
+            mTask.setResult((T) result, failure);
+            onExecuted((T) result);
+        }
+
+        private void publishProgress(Object progress) {
+            // only the latest value is kept, a frame callback is scheduled only if none is pending
+            mProgress.set(progress);
+            if (mProgressScheduled.compareAndSet(false, true)) {
+                FrameScheduler.postFrameCallback(mProgressRunnable);
+            }
+        }
 
+        private void deliverProgress() {
+            mProgressScheduled.set(false);
+
+            Object progress = mProgress.getAndSet(NO_PROGRESS);
+            if (progress == NO_PROGRESS || !mTask.isExecuting() || mTask.isFinished() || !mCanSaveInstanceState) {
+                return;
+            }
+
+            Activity activity = mTask.getActivity();
+            if (activity == null) {
+                return;
+            }
+
+            Pair<MethodInvoker, Object> target = mProgressMethodFinder.getMethod(activity, progress.getClass(), mTask);
+            if (target != null) {
+                mProgressMethodFinder.invoke(target, progress, mTask);
+            }
+        }
+
+        private synchronized void scheduleTimeout() {
+            long timeoutMillis = mTask.getTimeoutMillis();
+            if (timeoutMillis <= 0 || mTimeoutRunnable != null) {
+                return;
+            }
+
+            mTimeoutRunnable = new Runnable() {
+                @Override
+                public void run() {
+                    onTimeout();
+                }
+            };
+            mHandler.postDelayed(mTimeoutRunnable, timeoutMillis);
+        }
+
+        private synchronized void cancelTimeout() {
+            if (mTimeoutRunnable != null) {
+                mHandler.removeCallbacks(mTimeoutRunnable);
+            }
+        }
+
+        private void onTimeout() {
+            if (!mTask.isExecuting() || mTask.isFinished()) {
+                return;
+            }
+
+            mTask.setTimedOut();
+            mTask.setCancelled();
+
+            // only this task timed out, the attached tasks didn't set its deadline and execute again on their own
+            List<TaskRunnable<?>> attachedRunnables = completeCoalescing();
+            cancelExecution(true);
+
+            // free the registry entry and tell the callback, the worker may still be busy until it sees the interruption
+            mTask.setResult(null, createTimeoutException());
+            onExecuted(null);
+
+            if (attachedRunnables != null) {
+                resubmitAttached(attachedRunnables);
+            }
+        }
+
+        private TimeoutException createTimeoutException() {
+            return new TimeoutException("Task timed out after " + mTask.getTimeoutMillis() + " ms");
+        }
+
+        /**
+         * @return {@code true} if the task never started or waits for a retry and won't be started anymore.
+         */
+        private boolean cancelExecution(boolean mayInterruptIfRunning) {
+            Future<?> future = mFuture;
+
+            if (mStarted.compareAndSet(false, true) || mRetryPending.compareAndSet(true, false)) {
+                mTask.setCancelled();
+                if (future != null) {
+                    future.cancel(false);
+                    ExecutorService executorService = mExecutorService;
+                    if (executorService instanceof ThreadPoolExecutor && future instanceof Runnable) {
+                        ((ThreadPoolExecutor) executorService).remove((Runnable) future);
+                    }
+                }
+                mTask.setResult(null, mTask.isTimedOut() ? createTimeoutException() : null);
+
+                // the attached tasks weren't cancelled, they run on their own now
+                List<TaskRunnable<?>> attachedRunnables = completeCoalescing();
+                if (attachedRunnables != null) {
+                    resubmitAttached(attachedRunnables);
+                }
+                return true;
+            }
+
+            if (mayInterruptIfRunning && future != null && mTask.isExecuting() && !hasAttachedRunnables()) {
+                mTask.setCancelled();
+                future.cancel(true);
+            }
+            return false;
+        }
+
+        private void resubmitAttached(List<TaskRunnable<?>> attachedRunnables) {
+            for (TaskRunnable<?> attachedRunnable : attachedRunnables) {
+                // the first one executes, the others share its execution again
+                attachedRunnable.mOwner = null;
+                if (!attachToRunningTask(attachedRunnable) && !submit(attachedRunnable)) {
+                    attachedRunnable.cancelExecution(false);
+                    cleanUpTask(attachedRunnable);
+                }
+            }
+        }
+
+        private void recordMetrics(TaskMetrics.Outcome outcome) {
+            if (!mMetricsRecorded.compareAndSet(false, true)) {
+                return;
+            }
+
+            long now = System.nanoTime();
+            long startNanos = mStartNanos;
+            long finishNanos = mFinishNanos;
+
+            // coalesced tasks never start, they only receive the shared result
+            long queueWaitNanos = startNanos < 0 ? -1 : startNanos - mSubmitNanos;
+            long runNanos = startNanos < 0 || finishNanos < 0 ? -1 : finishNanos - startNanos;
+            long deliveryNanos = outcome == TaskMetrics.Outcome.DELIVERED && finishNanos >= 0 ? now - finishNanos : -1;
+
+            if (mTask.isTimedOut()) {
+                outcome = TaskMetrics.Outcome.TIMED_OUT;
+            } else if (outcome != TaskMetrics.Outcome.DELIVERED && mTask.isCancelled()) {
+                // a delivered result stays delivered
+                outcome = TaskMetrics.Outcome.CANCELLED;
+            }
+
+            mMetrics.record(mTask.getClass(), outcome, queueWaitNanos, runNanos, deliveryNanos);
+        }
+
+        private synchronized boolean hasAttachedRunnables() {
+            // other callers wait for the shared result, don't interrupt the work for them
+            return mAttachedRunnables != null && !mAttachedRunnables.isEmpty();
+        }
+
+        private void deliverResult(T result) {
             if (mTask instanceof TaskNoCallback) {
+                if (mTracer != null) {
+                    mTracer.record(TaskTracer.Event.DELIVERED, mTask);
+                }
+                cleanUpTask(this, TaskMetrics.Outcome.DELIVERED);
+                return;
+            }
+
+            if (mDetached && mTask.isCancelled()) {
+                // nobody will ask for this result anymore
                 cleanUpTask(this);
                 return;
             }
@@ -249,8 +866,122 @@ public final class TaskExecutor {
             Activity activity = mTask.getActivity();
             if (activity != null) {
                 postResult(result, activity);
+            } else {
+                // wait for onCreate of activity in life cycle callbacks
+                onParked();
+            }
+        }
+
+        private void onParked() {
+            if (mTracer != null) {
+                mTracer.record(TaskTracer.Event.PARKED, mTask);
+            }
+            if (mPendingResultStore != null && !mDetached && !mTask.isExecuting() && !mTask.isCancelled()) {
+                persistResult();
+            }
+        }
+
+        private synchronized void persistResult() {
+            if (mPersistedRecordId < 0 && !mTask.isFinished()) {
+                mPersistedRecordId = mPendingResultStore.persist(mTask, mLifecycleDispatcher.getSessionId(), mActivityHash);
+            }
+        }
+
+        private synchronized void removePersistedResult() {
+            if (mPersistedRecordId >= 0) {
+                mPendingResultStore.remove(mPersistedRecordId);
+                mPersistedRecordId = -1;
             }
-            // else wait for onCreate of activity in life cycle callbacks
+        }
+
+        private synchronized void removeDurableRecord() {
+            if (mDurableRecordId >= 0) {
+                mDurableTaskStore.remove(mDurableRecordId);
+                mDurableRecordId = -1;
+            }
+        }
+
+        /**
+         * Keeps a durable task running without callback, until a new callback is set.
+         */
+        private void detach() {
+            mDetached = true;
+            mWasDetached = true;
+            mClaimingActivityHash = 0;
+            mCanSaveInstanceState = false;
+
+            // e.g. the previous activity, which is started before the finishing one is stopped
+            WeakReference<Activity> startedActivity = mStartedActivity;
+            Activity activity = startedActivity == null ? null : startedActivity.get();
+            if (activity != null && activity.hashCode() != mActivityHash && !activity.isFinishing()) {
+                offerTo(activity);
+            }
+            mTask.setCachedActivity(null);
+
+            // nothing else references this runnable after the execution
+            mDetachedRunnables.add(this);
+            mLifecycleDispatcher.unregister(this);
+            if (mPendingResultStore != null) {
+                removePersistedResult();
+            }
+        }
+
+        /**
+         * The activity, which is started when this task is detached or the first one started afterwards, may claim
+         * it with a new callback.
+         */
+        private void offerTo(Activity activity) {
+            if (mDetached && mClaimingActivityHash == 0) {
+                mClaimingActivityHash = activity.hashCode();
+            }
+        }
+
+        /**
+         * Drops this task, if the activity it was offered to is gone without claiming it. Nothing else would ever
+         * remove it, e.g. the activity of a task resumed after a process restart doesn't exist anymore.
+         */
+        private void expireIfUnclaimed(Activity activity) {
+            if (!mDetached || activity.hashCode() != mClaimingActivityHash) {
+                return;
+            }
+            if (activity.isChangingConfigurations()) {
+                // the recreated activity is offered the task again
+                mClaimingActivityHash = 0;
+                return;
+            }
+
+            if (mDurableTaskStore != null) {
+                // nobody waits for the result, don't execute it again in the next process
+                removeDurableRecord();
+            }
+            cleanUpTask(this);
+        }
+
+        /**
+         * A detached task, which finished in the meantime, delivers its result to the new callback right away or is
+         * dropped, if the callback has no matching method.
+         */
+        private void onCallbackReplaced(Activity activity) {
+            if (mWasDetached && !mTask.isExecuting() && mCanSaveInstanceState) {
+                mWasDetached = false;
+                postResult(mTask.getResult(), activity);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void restoreResult(Object result) {
+            mStarted.set(true);
+            mExecuted.set(true);
+            mTask.setResult((T) result);
+
+            // the activity isn't initialized in onActivityCreated(), wait for onActivityStarted()
+            mCanSaveInstanceState = false;
+            onParked();
+        }
+
+        @Override
+        public TaskPriority getPriority() {
+            return mTask.getPriority();
         }
 
         private void postResultFromLifeCycleCallback(final Activity activity) {
@@ -278,126 +1009,173 @@ public final class TaskExecutor {
                 return;
             }
 
-            final Pair<Method, Object> target = mTargetMethodFinder.getMethod(activity, mTargetMethodFinder.getResultType(result, mTask), mTask);
-            if (target == null) {
-                cleanUpTask(this);
+            if (mBatchedDelivery != null) {
+                mBatchedDelivery.enqueue(new Runnable() {
+                    @Override
+                    public void run() {
+                        postResultOnMainThread(result, activity);
+                    }
+                });
+                return;
+            }
+
+            if (FragmentHack.isMainThread()) {
+                postResultOnMainThread(result, activity);
                 return;
             }
 
             if (mPostResult == PostResult.IMMEDIATELY) {
-                postResultNow(target, result, this);
+                postResultOnWorker(result, activity);
                 return;
             }
 
-            if (mCanSaveInstanceState) {
-                if (mPostResult == PostResult.ON_ANY_THREAD || Looper.getMainLooper() == Looper.myLooper()) {
-                    postResultNow(target, result, this);
-
-                } else {
-                    final CountDownLatch latch = new CountDownLatch(1);
-
-                    activity.runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            if (mCanSaveInstanceState) {
-                                postResultNow(target, result, TaskRunnable.this);
-                            } else {
-                                mPostingResult = false;
-                            }
-                            latch.countDown();
-                        }
-                    });
-
-                    try {
-                        latch.await();
-                    } catch (InterruptedException ignored) {
-                    }
-                }
-            } else {
+            if (!mCanSaveInstanceState) {
                 mPostingResult = false;
+                onParked();
+                return;
             }
+
+            // resolve the target in one pass on the main thread, the worker can pick up the next task right away
+            FragmentHack.postOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    postResultOnMainThread(result, activity);
+                }
+            });
         }
 
-        @Override
-        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
-            if (savedInstanceState == null) {
+        private void postResultOnMainThread(T result, Activity activity) {
+            if (mTask.isFinished()) {
+                return;
+            }
+            if (mPostResult != PostResult.IMMEDIATELY && !mCanSaveInstanceState) {
+                mPostingResult = false;
+                onParked();
                 return;
             }
 
-            int activityHash = savedInstanceState.getInt(ACTIVITY_HASH, -1);
-            if (activityHash != mActivityHash) {
+            Pair<Pair<MethodInvoker, Object>, Object> delivery = findDelivery(result, activity);
+            if (delivery == null) {
+                cleanUpTask(this);
                 return;
             }
+            postResultNow(delivery.first, delivery.second, this);
+        }
 
-            mActivityHash = activity.hashCode();
-            mTask.setCachedActivity(activity);
+        private void postResultOnWorker(final T result, final Activity activity) {
+            // only the lookup needs the main thread, the callback is invoked on the finishing worker
+            Pair<Pair<MethodInvoker, Object>, Object> delivery = FragmentHack.callOnMainThread(new Callable<Pair<Pair<MethodInvoker, Object>, Object>>() {
+                @Override
+                public Pair<Pair<MethodInvoker, Object>, Object> call() throws Exception {
+                    return findDelivery(result, activity);
+                }
+            });
 
-            postResultFromLifeCycleCallback(activity);
+            if (mTask.isFinished()) {
+                return;
+            }
+            if (delivery == null) {
+                cleanUpTask(this);
+                return;
+            }
+            postResultNow(delivery.first, delivery.second, this);
         }
 
-        @Override
-        public void onActivityStarted(Activity activity) {
-            postResultFromLifeCycleCallback(activity);
+        /**
+         * Must be called on the main thread.
+         *
+         * @return The target and the value passed to it, the failure, if a {@link TaskFailure} method accepts it,
+         * otherwise the result. {@code null}, if there is no target.
+         */
+        private Pair<Pair<MethodInvoker, Object>, Object> findDelivery(T result, Activity activity) {
+            Throwable failure = mTask.getFailure();
+            if (failure != null) {
+                Pair<MethodInvoker, Object> failureTarget = mFailureMethodFinder.getMethod(activity, failure.getClass(), mTask);
+                if (failureTarget != null) {
+                    return new Pair<Pair<MethodInvoker, Object>, Object>(failureTarget, failure);
+                }
+            }
+
+            Pair<MethodInvoker, Object> target = mTargetMethodFinder.getMethod(activity, mTargetMethodFinder.getResultType(result, mTask), mTask);
+            return target == null ? null : new Pair<Pair<MethodInvoker, Object>, Object>(target, result);
         }
 
         @Override
-        public void onActivityResumed(Activity activity) {
+        public void onActivityRecreated(Activity activity) {
+            mActivityHash = activity.hashCode();
+            mTask.setCachedActivity(activity);
+
+            if (mPendingResultStore != null) {
+                synchronized (this) {
+                    if (mPersistedRecordId >= 0) {
+                        // the stored result must point to the new activity, only its hash changes
+                        mPendingResultStore.updateActivityHash(mPersistedRecordId, mActivityHash);
+                    }
+                }
+            }
+
             postResultFromLifeCycleCallback(activity);
         }
 
         @Override
-        public void onActivityPaused(Activity activity) {
-            // do nothing
+        public void onActivityVisible(Activity activity) {
+            postResultFromLifeCycleCallback(activity);
         }
 
         @Override
         public void onActivityStopped(Activity activity) {
             if (isCallbackActivity(activity)) {
                 mCanSaveInstanceState = false;
-                if (activity.isFinishing()) {
+                if (activity.isFinishing() && mDurableTaskStore != null && mTask instanceof DurableTask && !mTask.isCancelled()) {
+                    detach();
+                } else if (activity.isFinishing()) {
                     cleanUpTask(this);
                 }
             }
         }
 
         @Override
-        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        public void onActivitySaveInstanceState(Activity activity) {
             if (isCallbackActivity(activity)) {
                 mCanSaveInstanceState = false;
-                outState.putInt(ACTIVITY_HASH, mActivityHash);
             }
         }
 
-        @Override
-        public void onActivityDestroyed(Activity activity) {
-            // do nothing
-        }
-
         private void updateCallbackActivity(Activity activity) {
+            if (mDetached) {
+                mDetached = false;
+                mDetachedRunnables.remove(this);
+            }
             mActivityHash = activity.hashCode();
-            mCanSaveInstanceState = getInitialSaveInstanceState(activity);
+            mCanSaveInstanceState = !mLifecycleDispatcher.isStateSaved(activity);
+            mLifecycleDispatcher.register(this, mActivityHash);
         }
 
         private boolean isCallbackActivity(Activity activity) {
             return activity.hashCode() == mActivityHash;
         }
-
-        private boolean getInitialSaveInstanceState(Activity activity) {
-            try {
-                android.app.Fragment fragment = new android.app.Fragment();
-                activity.getFragmentManager().beginTransaction().add(fragment, "GetVisibilityFragment").commit();
-                activity.getFragmentManager().beginTransaction().remove(fragment).commit();
-                return true;
-            } catch (Exception e) {
-                return false;
-            }
-        }
     }
 
     public static class Builder {
 
+        private static final long DEFAULT_FRAME_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(8);
+        private static final String PENDING_RESULTS_FILE = "android-task/pending-results";
+        private static final String DURABLE_TASKS_FILE = "android-task/durable-tasks";
+
+        // the journals are mapped once per process, two executors must not share a file
+        private static final Set<String> PERSISTENCE_FILES = Collections.synchronizedSet(new HashSet<String>());
+
         private PostResult mPostResult;
         private ExecutorService mExecutorService;
+        private int mWorkerCount;
+        private long mFrameBudgetNanos = DEFAULT_FRAME_BUDGET_NANOS;
+        private boolean mMetricsEnabled;
+        private TaskMetrics.Listener mMetricsListener;
+        private TaskTracer mTracer;
+        private Context mContext;
+        private boolean mResultPersistence;
+        private boolean mDurableExecution;
+        private String mName;
 
         public Builder() {
 
@@ -413,20 +1191,179 @@ public final class TaskExecutor {
             return this;
         }
 
+        /**
+         * Uses a built-in pool with at most {@code workerCount} threads. Queued tasks are started by their
+         * {@link TaskPriority} and in submission order within the same priority. Ignored, if an
+         * {@link ExecutorService} was set.
+         *
+         * @param workerCount The maximum number of threads running tasks in parallel.
+         * @return This builder.
+         */
+        public Builder setWorkerCount(int workerCount) {
+            if (workerCount <= 0) {
+                throw new IllegalArgumentException("workerCount must be greater than 0");
+            }
+            mWorkerCount = workerCount;
+            return this;
+        }
+
+        /**
+         * Limits the time spent on callbacks per frame with {@link PostResult#UI_THREAD_BATCHED}. The remaining
+         * results are delivered in the next frame. The default is 8 milliseconds.
+         *
+         * @param frameBudget The time per frame.
+         * @param unit The unit of {@code frameBudget}.
+         * @return This builder.
+         */
+        public Builder setFrameBudget(long frameBudget, TimeUnit unit) {
+            mFrameBudgetNanos = unit.toNanos(frameBudget);
+            return this;
+        }
+
+        /**
+         * Records queue wait, run time, delivery latency and the outcome of each task grouped by task class,
+         * see {@link TaskExecutor#getMetrics()}. Disabled by default.
+         *
+         * @param metricsEnabled Whether metrics should be recorded.
+         * @return This builder.
+         */
+        public Builder setMetricsEnabled(boolean metricsEnabled) {
+            mMetricsEnabled = metricsEnabled;
+            return this;
+        }
+
+        /**
+         * Notifies the listener about each completed task. Enables metrics.
+         *
+         * @param listener The listener receiving the values of each task.
+         * @return This builder.
+         */
+        public Builder setMetricsListener(TaskMetrics.Listener listener) {
+            mMetricsListener = listener;
+            mMetricsEnabled = listener != null || mMetricsEnabled;
+            return this;
+        }
+
+        /**
+         * Records the life cycle of each task in the given tracer. Disabled by default.
+         *
+         * @param tracer The tracer or {@code null} to disable tracing.
+         * @return This builder.
+         */
+        public Builder setTracer(TaskTracer tracer) {
+            mTracer = tracer;
+            return this;
+        }
+
+        /**
+         * Names the files of {@link #setResultPersistence(Context)} and {@link #setDurableExecution(Context)}. Each
+         * executor in a process using them needs its own name, which must stay the same across process restarts.
+         *
+         * @param name A name, which is valid in a file name.
+         * @return This builder.
+         */
+        public Builder setName(String name) {
+            if (name == null || name.isEmpty() || name.contains(File.separator)) {
+                throw new IllegalArgumentException("name must be a valid file name");
+            }
+            mName = name;
+            return this;
+        }
+
+        /**
+         * Keeps finished results, which are waiting for a stopped activity, on disk, so that they're delivered to
+         * the recreated activity after the process was killed. Only results of tasks returning a
+         * {@link ResultSerializer} are stored. Build the executor in {@link Application#onCreate()}, the
+         * recreated activity needs to be observed before any task is started. Only one executor per process can use
+         * the same file, give further executors a different name with {@link #setName(String)}, otherwise
+         * {@link #build()} throws an {@link IllegalStateException}.
+         *
+         * @param context Any context, the results are stored in the app's private files.
+         * @return This builder.
+         */
+        public Builder setResultPersistence(Context context) {
+            mContext = context.getApplicationContext();
+            mResultPersistence = true;
+            return this;
+        }
+
+        /**
+         * Journals the input of started {@link DurableTask}s on disk. Tasks, which didn't finish before the
+         * process was killed, are executed again, when the executor is built in the next process. Build the
+         * executor in {@link Application#onCreate()}. Like with {@link #setResultPersistence(Context)} each executor
+         * in a process needs its own name.
+         *
+         * @param context Any context, the tasks are stored in the app's private files.
+         * @return This builder.
+         */
+        public Builder setDurableExecution(Context context) {
+            mContext = context.getApplicationContext();
+            mDurableExecution = true;
+            return this;
+        }
+
         public TaskExecutor build() {
             if (mPostResult == null) {
                 mPostResult = PostResult.UI_THREAD;
             }
+            if (mExecutorService == null && mWorkerCount > 0) {
+                mExecutorService = new PriorityExecutorService(mWorkerCount);
+            }
             if (mExecutorService == null) {
                 mExecutorService = Executors.newCachedThreadPool();
             }
-            return new TaskExecutor(mExecutorService, mPostResult);
+            TaskMetrics metrics = mMetricsEnabled ? new TaskMetrics(mMetricsListener) : null;
+
+            File pendingResultsFile = mResultPersistence ? claimFile(PENDING_RESULTS_FILE) : null;
+            File durableTasksFile = mDurableExecution ? claimFile(DURABLE_TASKS_FILE) : null;
+
+            PendingResultStore pendingResultStore = null;
+            if (pendingResultsFile != null) {
+                try {
+                    pendingResultStore = new PendingResultStore(pendingResultsFile);
+                } catch (IOException e) {
+                    Log.e(TAG, e.getMessage(), e);
+                }
+            }
+
+            DurableTaskStore durableTaskStore = null;
+            if (durableTasksFile != null) {
+                try {
+                    durableTaskStore = new DurableTaskStore(durableTasksFile);
+                } catch (IOException e) {
+                    Log.e(TAG, e.getMessage(), e);
+                }
+            }
+
+            Application application = mContext instanceof Application ? (Application) mContext : null;
+            return new TaskExecutor(mExecutorService, mPostResult, mFrameBudgetNanos, metrics, mTracer, pendingResultStore, durableTaskStore,
+                    application);
+        }
+
+        private File claimFile(String path) {
+            File file = new File(mContext.getFilesDir(), mName == null ? path : path + '-' + mName);
+            if (!PERSISTENCE_FILES.add(file.getAbsolutePath())) {
+                throw new IllegalStateException("Another executor already uses " + file + ", set a different name with setName()");
+            }
+            return file;
         }
     }
 
     public enum PostResult {
+        /**
+         * The callback is invoked on the worker, which finished the task, even if the activity saved its state.
+         * Only the lookup of the callback blocks the worker for one pass on the main thread.
+         */
         IMMEDIATELY,
+        /**
+         * The callback is invoked on the main thread, the same as {@link #UI_THREAD}.
+         */
         ON_ANY_THREAD,
-        UI_THREAD
+        UI_THREAD,
+        /**
+         * Like {@link #UI_THREAD}, but results are queued and delivered together once per frame in the order the
+         * tasks finished, see {@link Builder#setFrameBudget(long, TimeUnit)}.
+         */
+        UI_THREAD_BATCHED
     }
 }
@@ -0,0 +1,17 @@
+package net.vrallev.android.task;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Marks a method receiving the exception thrown by {@link Task#execute()}, or a
+ * {@link java.util.concurrent.TimeoutException}, if the task timed out. The method accepts the exception and
+ * optionally the task, like a {@link TaskResult} method, and is chosen by the type of the exception. If no
+ * method matches, then the {@link TaskResult} method receives a {@code null} result.
+ *
+ * @author rwondratschek
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TaskFailure {
+    String id() default "";
+}
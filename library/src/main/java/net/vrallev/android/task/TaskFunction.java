@@ -0,0 +1,11 @@
+package net.vrallev.android.task;
+
+/**
+ * Transforms the result of one stage into the input of the next stage, see {@link Tasks}.
+ *
+ * @author rwondratschek
+ */
+public interface TaskFunction<INPUT, OUTPUT> {
+
+    OUTPUT apply(INPUT input);
+}
@@ -0,0 +1,163 @@
+package net.vrallev.android.task;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Execution metrics of a {@link TaskExecutor} grouped by task class. For each task the time waiting in the queue,
+ * the time spent in {@link Task#execute()} and the time from finishing until the callback was invoked are
+ * recorded. The delivery latency includes the time the result was parked while the activity was stopped or
+ * recreated.
+ *
+ * @author rwondratschek
+ * @see TaskExecutor.Builder#setMetricsEnabled(boolean)
+ */
+@SuppressWarnings("unused")
+public final class TaskMetrics {
+
+    public enum Outcome {
+        /**
+         * The result reached its callback, or the task implements {@link TaskNoCallback}.
+         */
+        DELIVERED,
+        /**
+         * The task finished, but no callback received the result, e.g. the activity was finished.
+         */
+        DROPPED,
+        CANCELLED,
+        TIMED_OUT
+    }
+
+    /**
+     * Notified once for each task. Called on the thread cleaning up the task, which is often the main thread,
+     * so implementations must return quickly.
+     */
+    public interface Listener {
+
+        /**
+         * @param queueWaitNanos The time from submitting until the task started, {@code -1} if it never ran.
+         * @param runNanos The time spent executing the task, {@code -1} if it never ran.
+         * @param deliveryNanos The time from finishing until the callback was invoked, {@code -1} if the result
+         *                      wasn't delivered.
+         */
+        void onTaskCompleted(Class<? extends Task> taskClass, Outcome outcome, long queueWaitNanos, long runNanos, long deliveryNanos);
+    }
+
+    private final ConcurrentMap<Class<? extends Task>, ClassMetrics> mClassMetrics;
+    private final Listener mListener;
+
+    /*package*/ TaskMetrics(Listener listener) {
+        mClassMetrics = new ConcurrentHashMap<>();
+        mListener = listener;
+    }
+
+    /*package*/ void record(Class<? extends Task> taskClass, Outcome outcome, long queueWaitNanos, long runNanos, long deliveryNanos) {
+        ClassMetrics classMetrics = mClassMetrics.get(taskClass);
+        if (classMetrics == null) {
+            classMetrics = new ClassMetrics();
+            ClassMetrics previous = mClassMetrics.putIfAbsent(taskClass, classMetrics);
+            if (previous != null) {
+                classMetrics = previous;
+            }
+        }
+
+        classMetrics.mQueueWait.record(queueWaitNanos);
+        classMetrics.mRunTime.record(runNanos);
+        classMetrics.mDeliveryLatency.record(deliveryNanos);
+        classMetrics.mOutcomes.incrementAndGet(outcome.ordinal());
+
+        if (mListener != null) {
+            mListener.onTaskCompleted(taskClass, outcome, queueWaitNanos, runNanos, deliveryNanos);
+        }
+    }
+
+    /**
+     * @return The metrics of all task classes, which completed at least once.
+     */
+    public Map<Class<? extends Task>, Snapshot> getSnapshot() {
+        Map<Class<? extends Task>, Snapshot> result = new HashMap<>();
+        for (Map.Entry<Class<? extends Task>, ClassMetrics> entry : mClassMetrics.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * @return The metrics of the given task class or {@code null}, if no task of this class completed yet.
+     */
+    public Snapshot getSnapshot(Class<? extends Task> taskClass) {
+        ClassMetrics classMetrics = mClassMetrics.get(taskClass);
+        return classMetrics == null ? null : classMetrics.snapshot();
+    }
+
+    /**
+     * Drops all recorded values. Tasks completing at the same time may still be counted in the old values.
+     */
+    public void reset() {
+        mClassMetrics.clear();
+    }
+
+    public static final class Snapshot {
+
+        private final LatencyHistogram.Snapshot mQueueWait;
+        private final LatencyHistogram.Snapshot mRunTime;
+        private final LatencyHistogram.Snapshot mDeliveryLatency;
+        private final long[] mOutcomes;
+
+        private Snapshot(LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot runTime, LatencyHistogram.Snapshot deliveryLatency,
+                         long[] outcomes) {
+            mQueueWait = queueWait;
+            mRunTime = runTime;
+            mDeliveryLatency = deliveryLatency;
+            mOutcomes = outcomes;
+        }
+
+        public LatencyHistogram.Snapshot getQueueWait() {
+            return mQueueWait;
+        }
+
+        public LatencyHistogram.Snapshot getRunTime() {
+            return mRunTime;
+        }
+
+        public LatencyHistogram.Snapshot getDeliveryLatency() {
+            return mDeliveryLatency;
+        }
+
+        public long getOutcomeCount(Outcome outcome) {
+            return mOutcomes[outcome.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder()
+                    .append("queueWait={").append(mQueueWait).append("}, ")
+                    .append("runTime={").append(mRunTime).append("}, ")
+                    .append("deliveryLatency={").append(mDeliveryLatency).append('}');
+            for (Outcome outcome : Outcome.values()) {
+                builder.append(", ").append(outcome).append('=').append(getOutcomeCount(outcome));
+            }
+            return builder.toString();
+        }
+    }
+
+    private static final class ClassMetrics {
+
+        private final LatencyHistogram mQueueWait = new LatencyHistogram();
+        private final LatencyHistogram mRunTime = new LatencyHistogram();
+        private final LatencyHistogram mDeliveryLatency = new LatencyHistogram();
+        private final AtomicLongArray mOutcomes = new AtomicLongArray(Outcome.values().length);
+
+        private Snapshot snapshot() {
+            long[] outcomes = new long[mOutcomes.length()];
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = mOutcomes.get(i);
+            }
+            return new Snapshot(mQueueWait.snapshot(), mRunTime.snapshot(), mDeliveryLatency.snapshot(), outcomes);
+        }
+    }
+}
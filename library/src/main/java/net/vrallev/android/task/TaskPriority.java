@@ -0,0 +1,13 @@
+package net.vrallev.android.task;
+
+/**
+ * Order in which queued tasks are started, if the {@link TaskExecutor} uses the built-in bounded pool. Tasks
+ * with the same priority are started in the order they were submitted.
+ *
+ * @author rwondratschek
+ */
+public enum TaskPriority {
+    UI_BLOCKING,
+    USER_VISIBLE,
+    BACKGROUND
+}
@@ -0,0 +1,15 @@
+package net.vrallev.android.task;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Marks a method receiving the values passed to {@link Task#publishProgress(Object)}. The method accepts the
+ * progress object and optionally the task, like a {@link TaskResult} method.
+ *
+ * @author rwondratschek
+ */
+@Retention(RetentionPolicy.RUNTIME)
+public @interface TaskProgress {
+    String id() default "";
+}
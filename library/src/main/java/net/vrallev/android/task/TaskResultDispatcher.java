@@ -0,0 +1,73 @@
+package net.vrallev.android.task;
+
+import android.util.Log;
+
+/**
+ * Base class for the dispatchers generated by the {@code android-task-processor}. A generated dispatcher
+ * describes the {@link TaskResult}, {@link TaskProgress} and {@link TaskFailure} methods declared in exactly
+ * one class and invokes them without reflection. Classes without a generated dispatcher are still scanned with reflection.
+ *
+ * @author rwondratschek
+ */
+public abstract class TaskResultDispatcher {
+
+    private static final String TAG = "TaskResultDispatcher";
+    private static final String SUFFIX = "$$TaskResultDispatcher";
+
+    /**
+     * Loads the generated dispatcher. The result isn't cached here, {@link MethodIndex} calls this once per class.
+     *
+     * @return The dispatcher or {@code null}, if no dispatcher was generated for this class.
+     */
+    /*package*/ static TaskResultDispatcher forClass(Class<?> target) {
+        try {
+            Class<?> dispatcherClass = Class.forName(target.getName() + SUFFIX, true, target.getClassLoader());
+            return (TaskResultDispatcher) dispatcherClass.newInstance();
+
+        } catch (ClassNotFoundException e) {
+            return null;
+
+        } catch (Exception e) {
+            Log.e(TAG, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private final Class<?>[] mAnnotations;
+    private final String[] mIds;
+    private final Class<?>[] mResultTypes;
+    private final Class<?>[] mTaskTypes;
+
+    protected TaskResultDispatcher(Class<?>[] annotations, String[] ids, Class<?>[] resultTypes, Class<?>[] taskTypes) {
+        mAnnotations = annotations;
+        mIds = ids;
+        mResultTypes = resultTypes;
+        mTaskTypes = taskTypes;
+    }
+
+    /**
+     * Invokes the method with the given index on the target.
+     *
+     * @param target The instance declaring the method.
+     * @param index The index of the method in the arrays passed to the constructor.
+     * @param result The result or progress of the task.
+     * @param task The task.
+     */
+    protected abstract void dispatch(Object target, int index, Object result, Task<?> task);
+
+    /*package*/ final Class<?>[] getAnnotations() {
+        return mAnnotations;
+    }
+
+    /*package*/ final String[] getIds() {
+        return mIds;
+    }
+
+    /*package*/ final Class<?>[] getResultTypes() {
+        return mResultTypes;
+    }
+
+    /*package*/ final Class<?>[] getTaskTypes() {
+        return mTaskTypes;
+    }
+}
@@ -0,0 +1,271 @@
+package net.vrallev.android.task;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Process;
+import android.os.Trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the life cycle of each task in a fixed size ring buffer, the oldest events are overwritten. Recording
+ * never blocks and never allocates. The timeline can be exported in the Chrome trace event format and opened in
+ * {@code chrome://tracing} or Perfetto. Timestamps use the same clock as systrace, on Jelly Bean MR2 and above
+ * the execution and delivery of each task are additionally emitted as {@link Trace} sections, so both line up
+ * with the frames of the app. The section names are built only once per task class.
+ *
+ * <pre>
+ * TaskTracer tracer = new TaskTracer(4096);
+ * new TaskExecutor.Builder().setTracer(tracer).build().asSingleton();
+ * ...
+ * tracer.writeChromeTrace(new FileWriter(file));
+ * </pre>
+ *
+ * @author rwondratschek
+ */
+@SuppressWarnings("unused")
+public final class TaskTracer {
+
+    public enum Event {
+        SUBMITTED,
+        STARTED,
+        FINISHED,
+        /**
+         * The result is waiting, because the activity is stopped or being recreated.
+         */
+        PARKED,
+        DELIVERED,
+        /**
+         * The task was cleaned up without delivering a result, e.g. it was cancelled or the activity finished.
+         */
+        DROPPED
+    }
+
+    private static final Event[] EVENTS = Event.values();
+
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    private final int mMask;
+    private final AtomicLong mCursor;
+
+    // a slot is written, while its version is odd, and is complete, when it's even
+    private final AtomicLongArray mVersions;
+    private final AtomicLongArray mTimestamps;
+    private final AtomicIntegerArray mEvents;
+    private final AtomicIntegerArray mTaskKeys;
+    private final AtomicIntegerArray mThreadIds;
+    private final AtomicReferenceArray<Class<?>> mTaskClasses;
+
+    private final ConcurrentMap<Integer, String> mThreadNames;
+    private final ThreadLocal<Integer> mThreadId;
+
+    // the section names are built once per task class
+    private final ConcurrentMap<Class<?>, String> mExecutionSections;
+    private final ConcurrentMap<Class<?>, String> mDeliverySections;
+
+    /**
+     * @param capacity The number of events kept, rounded up to the next power of two.
+     */
+    public TaskTracer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0");
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+
+        mMask = size - 1;
+        mCursor = new AtomicLong();
+
+        mVersions = new AtomicLongArray(size);
+        mTimestamps = new AtomicLongArray(size);
+        mEvents = new AtomicIntegerArray(size);
+        mTaskKeys = new AtomicIntegerArray(size);
+        mThreadIds = new AtomicIntegerArray(size);
+        mTaskClasses = new AtomicReferenceArray<>(size);
+
+        mThreadNames = new ConcurrentHashMap<>();
+        mExecutionSections = new ConcurrentHashMap<>();
+        mDeliverySections = new ConcurrentHashMap<>();
+        mThreadId = new ThreadLocal<Integer>() {
+            @Override
+            protected Integer initialValue() {
+                int threadId = Process.myTid();
+                mThreadNames.put(threadId, Thread.currentThread().getName());
+                return threadId;
+            }
+        };
+    }
+
+    /*package*/ void record(Event event, Task<?> task) {
+        long timestamp = System.nanoTime();
+        long sequence = mCursor.getAndIncrement();
+        int slot = (int) (sequence & mMask);
+
+        long writing = 2 * sequence + 1;
+        long current = mVersions.get(slot);
+        if ((current & 1) == 1 || current > writing || !mVersions.compareAndSet(slot, current, writing)) {
+            // another writer lapped the buffer and owns the slot, drop this event rather than waiting
+            return;
+        }
+
+        mTimestamps.set(slot, timestamp);
+        mEvents.set(slot, event.ordinal());
+        mTaskKeys.set(slot, task.getKey());
+        mThreadIds.set(slot, mThreadId.get());
+        mTaskClasses.set(slot, task.getClass());
+
+        mVersions.set(slot, writing + 1);
+    }
+
+    /*package*/ void beginExecutionSection(Task<?> task) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Api18.beginSection(getSectionName(mExecutionSections, "Task ", task.getClass()));
+        }
+    }
+
+    /*package*/ void beginDeliverySection(Task<?> task) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Api18.beginSection(getSectionName(mDeliverySections, "TaskResult ", task.getClass()));
+        }
+    }
+
+    private static String getSectionName(ConcurrentMap<Class<?>, String> sections, String prefix, Class<?> taskClass) {
+        String name = sections.get(taskClass);
+        if (name == null) {
+            name = prefix + taskClass.getSimpleName();
+            if (name.length() > MAX_SECTION_NAME_LENGTH) {
+                name = name.substring(0, MAX_SECTION_NAME_LENGTH);
+            }
+            sections.put(taskClass, name);
+        }
+        return name;
+    }
+
+    /*package*/ void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Api18.endSection();
+        }
+    }
+
+    /**
+     * Writes all events, which are still in the buffer, in the Chrome trace event format. Each task is shown as
+     * an async span from submitting until the delivery of its result, and its execution as a slice on the worker
+     * thread. The writer isn't closed.
+     *
+     * @param writer The destination.
+     * @throws IOException If the writer fails.
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        long end = mCursor.get();
+        long start = Math.max(0, end - mMask - 1);
+
+        writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+
+        boolean first = true;
+        for (Map.Entry<Integer, String> entry : mThreadNames.entrySet()) {
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writer.write(String.format(Locale.US, "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":%d,\"args\":{\"name\":\"%s\"}}",
+                    entry.getKey(), escape(entry.getValue())));
+        }
+
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mMask);
+            long version = 2 * sequence + 2;
+            if (mVersions.get(slot) != version) {
+                continue;
+            }
+
+            long timestamp = mTimestamps.get(slot);
+            Event event = EVENTS[mEvents.get(slot)];
+            int taskKey = mTaskKeys.get(slot);
+            int threadId = mThreadIds.get(slot);
+            Class<?> taskClass = mTaskClasses.get(slot);
+
+            if (mVersions.get(slot) != version) {
+                // overwritten while reading
+                continue;
+            }
+
+            writer.write(first ? "\n" : ",\n");
+            first = false;
+            writeEvent(writer, event, taskClass.getName(), taskKey, threadId, timestamp);
+        }
+
+        writer.write("\n]}\n");
+        writer.flush();
+    }
+
+    private static void writeEvent(Writer writer, Event event, String name, int taskKey, int threadId, long timestampNanos) throws IOException {
+        String phase;
+        String eventName = name;
+        switch (event) {
+            case SUBMITTED:
+                phase = "b";
+                break;
+            case STARTED:
+                phase = "B";
+                break;
+            case FINISHED:
+                phase = "E";
+                break;
+            case PARKED:
+                phase = "n";
+                eventName = "parked";
+                break;
+            case DELIVERED:
+            case DROPPED:
+                phase = "e";
+                break;
+            default:
+                throw new IllegalStateException("Unknown event " + event);
+        }
+
+        String scope = phase.equals("B") || phase.equals("E") ? "" : String.format(Locale.US, ",\"cat\":\"task\",\"id\":%d", taskKey);
+        writer.write(String.format(Locale.US, "{\"name\":\"%s\",\"ph\":\"%s\",\"ts\":%.3f,\"pid\":0,\"tid\":%d%s,\"args\":{\"key\":%d,\"event\":\"%s\"}}",
+                escape(eventName), phase, timestampNanos / 1000.0, threadId, scope, taskKey, event));
+    }
+
+    private static String escape(String value) {
+        StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20) {
+                builder.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static final class Api18 {
+
+        private Api18() {
+            // no op
+        }
+
+        private static void beginSection(String name) {
+            Trace.beginSection(name);
+        }
+
+        private static void endSection() {
+            Trace.endSection();
+        }
+    }
+}
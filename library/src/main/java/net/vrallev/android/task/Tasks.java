@@ -0,0 +1,277 @@
+package net.vrallev.android.task;
+
+import android.app.Activity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Composes several tasks into one task. All stages run on the pool of the {@link TaskExecutor}, which
+ * starts the composed task, and only the final result is delivered to the {@link TaskResult} callback.
+ * Parallel stages are forked to other workers; the joining worker runs stages itself, which no other
+ * worker has started yet, so a bounded pool can't dead lock. If a stage fails, then the remaining parallel
+ * stages are cancelled and the composed task fails with the same exception.
+ *
+ * <pre>
+ * Tasks.zip(new UserTask(id), new FriendsTask(id), new TaskCombiner&lt;User, List&lt;User&gt;, Profile&gt;() {
+ *     &#64;Override
+ *     public Profile combine(User user, List&lt;User&gt; friends) {
+ *         return new Profile(user, friends);
+ *     }
+ * }).start(this);
+ * </pre>
+ *
+ * @author rwondratschek
+ */
+@SuppressWarnings("unused")
+public final class Tasks {
+
+    private Tasks() {
+        // no op
+    }
+
+    /**
+     * @return A task, which runs {@code task} and transforms its result with {@code function}.
+     */
+    public static <INPUT, OUTPUT> Task<OUTPUT> map(Task<INPUT> task, TaskFunction<? super INPUT, ? extends OUTPUT> function) {
+        return new MapTask<>(task, function);
+    }
+
+    /**
+     * @return A task, which runs {@code task} and afterwards the task created by {@code next} from the result
+     * on the same worker thread.
+     */
+    public static <INPUT, OUTPUT> Task<OUTPUT> then(Task<INPUT> task, TaskFunction<? super INPUT, ? extends Task<OUTPUT>> next) {
+        return new ThenTask<>(task, next);
+    }
+
+    /**
+     * @return A task, which runs all tasks in parallel and returns their results in the same order.
+     */
+    public static <RESULT> Task<List<RESULT>> all(List<? extends Task<? extends RESULT>> tasks) {
+        return new AllTask<>(new ArrayList<Task<? extends RESULT>>(tasks));
+    }
+
+    /**
+     * @return A task, which runs both tasks in parallel and combines their results.
+     */
+    public static <FIRST, SECOND, RESULT> Task<RESULT> zip(Task<FIRST> first, Task<SECOND> second,
+                                                          TaskCombiner<? super FIRST, ? super SECOND, ? extends RESULT> combiner) {
+        return new ZipTask<>(first, second, combiner);
+    }
+
+    private abstract static class CompositeTask<RESULT> extends Task<RESULT> {
+
+        protected final <T> T runStage(Task<T> stage) {
+            prepareStage(stage);
+            // a failure is rethrown, the composed task fails, is retried or delivers the failure instead
+            return stage.executeStage();
+        }
+
+        protected final List<Object> runStagesInParallel(List<? extends Task<?>> stages) {
+            int size = stages.size();
+            if (size == 0) {
+                return Collections.emptyList();
+            }
+
+            ForkedStage[] forkedStages = new ForkedStage[size];
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            for (int i = 0; i < size; i++) {
+                Task<?> stage = stages.get(i);
+                prepareStage(stage);
+                forkedStages[i] = new ForkedStage(stage, forkedStages, failure);
+            }
+
+            // the first stage runs on this thread, the others are offered to the pool
+            TaskExecutor taskExecutor = getTaskExecutor();
+            for (int i = 1; i < size; i++) {
+                if (taskExecutor == null || !taskExecutor.fork(forkedStages[i])) {
+                    break;
+                }
+            }
+
+            List<Object> results = new ArrayList<>(size);
+            for (ForkedStage forkedStage : forkedStages) {
+                results.add(forkedStage.join());
+            }
+
+            throwFailure(failure.get());
+            return results;
+        }
+
+        private void prepareStage(Task<?> stage) {
+            stage.setParent(this);
+            stage.setTaskExecutor(getTaskExecutor());
+            // a stage cancelled by a failed sibling runs again, if the composed task is retried
+            stage.clearCancelled();
+
+            Activity activity = getActivity();
+            if (activity != null) {
+                stage.setCachedActivity(activity);
+            }
+        }
+
+        private static void throwFailure(Throwable failure) {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                // execute() doesn't declare checked exceptions, but they can be thrown anyway
+                throw new RuntimeException(failure);
+            }
+        }
+    }
+
+    private static final class ForkedStage implements Runnable, PriorityExecutorService.Prioritized {
+
+        private final Task<?> mStage;
+        private final ForkedStage[] mSiblings;
+        private final AtomicReference<Throwable> mFailure;
+        private final AtomicBoolean mStarted;
+        private final CountDownLatch mDone;
+
+        private volatile Object mResult;
+
+        private ForkedStage(Task<?> stage, ForkedStage[] siblings, AtomicReference<Throwable> failure) {
+            mStage = stage;
+            mSiblings = siblings;
+            mFailure = failure;
+            mStarted = new AtomicBoolean();
+            mDone = new CountDownLatch(1);
+        }
+
+        @Override
+        public void run() {
+            if (!mStarted.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                mResult = mStage.executeStage();
+            } catch (Throwable t) {
+                if (mFailure.compareAndSet(null, t)) {
+                    // the composed task fails anyway, don't waste workers on the other stages
+                    for (ForkedStage sibling : mSiblings) {
+                        if (sibling != this) {
+                            sibling.cancel();
+                        }
+                    }
+                }
+            } finally {
+                mDone.countDown();
+            }
+        }
+
+        private void cancel() {
+            mStage.setCancelled();
+            if (mStarted.compareAndSet(false, true)) {
+                // never started, there is nothing to wait for
+                mDone.countDown();
+            }
+        }
+
+        @Override
+        public TaskPriority getPriority() {
+            // the stage inherits the priority of the composed task, unless it sets its own
+            return mStage.getPriority();
+        }
+
+        private Object join() {
+            // runs the stage on the joining thread, if no worker picked it up yet
+            run();
+            try {
+                mDone.await();
+            } catch (InterruptedException e) {
+                // the composed task was cancelled, its result is dropped
+                Thread.currentThread().interrupt();
+            }
+            return mResult;
+        }
+    }
+
+    private static final class MapTask<INPUT, OUTPUT> extends CompositeTask<OUTPUT> {
+
+        private final Task<INPUT> mTask;
+        private final TaskFunction<? super INPUT, ? extends OUTPUT> mFunction;
+
+        private MapTask(Task<INPUT> task, TaskFunction<? super INPUT, ? extends OUTPUT> function) {
+            mTask = task;
+            mFunction = function;
+        }
+
+        @Override
+        protected OUTPUT execute() {
+            INPUT input = runStage(mTask);
+            if (isCancelled()) {
+                return null;
+            }
+            return mFunction.apply(input);
+        }
+    }
+
+    private static final class ThenTask<INPUT, OUTPUT> extends CompositeTask<OUTPUT> {
+
+        private final Task<INPUT> mTask;
+        private final TaskFunction<? super INPUT, ? extends Task<OUTPUT>> mNext;
+
+        private ThenTask(Task<INPUT> task, TaskFunction<? super INPUT, ? extends Task<OUTPUT>> next) {
+            mTask = task;
+            mNext = next;
+        }
+
+        @Override
+        protected OUTPUT execute() {
+            INPUT input = runStage(mTask);
+            if (isCancelled()) {
+                return null;
+            }
+
+            Task<OUTPUT> next = mNext.apply(input);
+            return next == null ? null : runStage(next);
+        }
+    }
+
+    private static final class AllTask<RESULT> extends CompositeTask<List<RESULT>> {
+
+        private final List<Task<? extends RESULT>> mTasks;
+
+        private AllTask(List<Task<? extends RESULT>> tasks) {
+            mTasks = tasks;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected List<RESULT> execute() {
+            return (List<RESULT>) runStagesInParallel(mTasks);
+        }
+    }
+
+    private static final class ZipTask<FIRST, SECOND, RESULT> extends CompositeTask<RESULT> {
+
+        private final Task<FIRST> mFirst;
+        private final Task<SECOND> mSecond;
+        private final TaskCombiner<? super FIRST, ? super SECOND, ? extends RESULT> mCombiner;
+
+        private ZipTask(Task<FIRST> first, Task<SECOND> second, TaskCombiner<? super FIRST, ? super SECOND, ? extends RESULT> combiner) {
+            mFirst = first;
+            mSecond = second;
+            mCombiner = combiner;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected RESULT execute() {
+            List<Object> results = runStagesInParallel(Arrays.asList(mFirst, mSecond));
+            if (isCancelled()) {
+                return null;
+            }
+            return mCombiner.combine((FIRST) results.get(0), (SECOND) results.get(1));
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package net.vrallev.android.task.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code TaskResultDispatcher} for each class declaring {@code TaskResult}, {@code TaskProgress} or
+ * {@code TaskFailure} methods. The dispatcher is named after the binary name of the class plus {@code $$TaskResultDispatcher} and
+ * lives in the same package, so that it can call package private methods.
+ *
+ * @author rwondratschek
+ */
+public final class TaskResultProcessor extends AbstractProcessor {
+
+    private static final String TASK_RESULT = "net.vrallev.android.task.TaskResult";
+    private static final String TASK_PROGRESS = "net.vrallev.android.task.TaskProgress";
+    private static final String TASK_FAILURE = "net.vrallev.android.task.TaskFailure";
+    private static final List<String> ANNOTATIONS = Arrays.asList(TASK_RESULT, TASK_PROGRESS, TASK_FAILURE);
+    private static final String SUFFIX = "$$TaskResultDispatcher";
+
+    private Elements mElements;
+    private Types mTypes;
+    private Filer mFiler;
+    private Messager mMessager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+        mFiler = processingEnv.getFiler();
+        mMessager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new LinkedHashSet<>(ANNOTATIONS);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<TypeElement, List<AnnotatedMethod>> methodsByClass = new LinkedHashMap<>();
+
+        for (String annotationName : ANNOTATIONS) {
+            TypeElement annotation = mElements.getTypeElement(annotationName);
+            if (annotation == null) {
+                continue;
+            }
+
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.METHOD) {
+                    continue;
+                }
+
+                ExecutableElement method = (ExecutableElement) element;
+                if (!isValid(method, annotationName)) {
+                    continue;
+                }
+
+                TypeElement enclosingClass = (TypeElement) method.getEnclosingElement();
+                List<AnnotatedMethod> methods = methodsByClass.get(enclosingClass);
+                if (methods == null) {
+                    methods = new ArrayList<>();
+                    methodsByClass.put(enclosingClass, methods);
+                }
+                methods.add(new AnnotatedMethod(method, annotationName));
+            }
+        }
+
+        for (Map.Entry<TypeElement, List<AnnotatedMethod>> entry : methodsByClass.entrySet()) {
+            TypeElement enclosingClass = entry.getKey();
+            if (!isAccessibleFromPackage(enclosingClass)) {
+                mMessager.printMessage(Diagnostic.Kind.NOTE, "Class isn't accessible from its package, results are dispatched with reflection",
+                        enclosingClass);
+                continue;
+            }
+
+            try {
+                writeDispatcher(enclosingClass, entry.getValue());
+            } catch (IOException e) {
+                mMessager.printMessage(Diagnostic.Kind.ERROR, "Couldn't write dispatcher: " + e.getMessage(), enclosingClass);
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isValid(ExecutableElement method, String annotationName) {
+        Set<Modifier> modifiers = method.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+            mMessager.printMessage(Diagnostic.Kind.ERROR, "Callback methods must not be private or static", method);
+            return false;
+        }
+
+        // the same methods are ignored at runtime
+        List<? extends VariableElement> parameters = method.getParameters();
+        if (parameters.isEmpty() || parameters.size() > 2) {
+            return false;
+        }
+        TypeMirror firstParameter = parameters.get(0).asType();
+        if (firstParameter.getKind().isPrimitive()) {
+            return false;
+        }
+
+        if (TASK_FAILURE.equals(annotationName)
+                && !mTypes.isAssignable(firstParameter, mElements.getTypeElement(Throwable.class.getName()).asType())) {
+            mMessager.printMessage(Diagnostic.Kind.ERROR, "TaskFailure methods must accept a Throwable", method);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isAccessibleFromPackage(TypeElement type) {
+        Element element = type;
+        while (element instanceof TypeElement) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private void writeDispatcher(TypeElement enclosingClass, List<AnnotatedMethod> methods) throws IOException {
+        PackageElement packageElement = mElements.getPackageOf(enclosingClass);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String binaryName = mElements.getBinaryName(enclosingClass).toString();
+        String className = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)) + SUFFIX;
+        String targetType = erasure(enclosingClass.asType());
+
+        StringBuilder ids = new StringBuilder();
+        StringBuilder resultTypes = new StringBuilder();
+        StringBuilder taskTypes = new StringBuilder();
+        StringBuilder annotations = new StringBuilder();
+        StringBuilder cases = new StringBuilder();
+
+        for (int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i).mMethod;
+            String annotationName = methods.get(i).mAnnotationName;
+            List<? extends VariableElement> parameters = method.getParameters();
+
+            String resultType = erasure(parameters.get(0).asType());
+            String taskType = parameters.size() == 2 ? erasure(parameters.get(1).asType()) : null;
+
+            String separator = i == 0 ? "" : ", ";
+            annotations.append(separator).append(annotationName).append(".class");
+            ids.append(separator).append(mElements.getConstantExpression(getAnnotationId(method, annotationName)));
+            resultTypes.append(separator).append(resultType).append(".class");
+            taskTypes.append(separator).append(taskType == null ? "null" : taskType + ".class");
+
+            cases.append("            case ").append(i).append(":\n")
+                    .append("                callback.").append(method.getSimpleName()).append("((").append(resultType).append(") result");
+            if (taskType != null) {
+                cases.append(", (").append(taskType).append(") task");
+            }
+            cases.append(");\n")
+                    .append("                break;\n");
+        }
+
+        String qualifiedName = packageName.isEmpty() ? className : packageName + '.' + className;
+        JavaFileObject sourceFile = mFiler.createSourceFile(qualifiedName, enclosingClass);
+
+        Writer writer = sourceFile.openWriter();
+        try {
+            writer.write("// Generated code from android-task. Do not modify!\n");
+            if (!packageName.isEmpty()) {
+                writer.write("package " + packageName + ";\n\n");
+            }
+            writer.write("import net.vrallev.android.task.Task;\n"
+                    + "import net.vrallev.android.task.TaskResultDispatcher;\n\n"
+                    + "@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n"
+                    + "public final class " + className + " extends TaskResultDispatcher {\n\n"
+                    + "    public " + className + "() {\n"
+                    + "        super(new Class<?>[]{" + annotations + "},\n"
+                    + "                new String[]{" + ids + "},\n"
+                    + "                new Class<?>[]{" + resultTypes + "},\n"
+                    + "                new Class<?>[]{" + taskTypes + "});\n"
+                    + "    }\n\n"
+                    + "    @Override\n"
+                    + "    protected void dispatch(Object target, int index, Object result, Task<?> task) {\n"
+                    + "        " + targetType + " callback = (" + targetType + ") target;\n"
+                    + "        switch (index) {\n"
+                    + cases
+                    + "            default:\n"
+                    + "                throw new IllegalArgumentException(\"Unknown method index \" + index);\n"
+                    + "        }\n"
+                    + "    }\n"
+                    + "}\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private String erasure(TypeMirror type) {
+        return mTypes.erasure(type).toString();
+    }
+
+    private String getAnnotationId(ExecutableElement method, String annotationName) {
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!annotationType.getQualifiedName().contentEquals(annotationName)) {
+                continue;
+            }
+
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals("id")) {
+                    return String.valueOf(entry.getValue().getValue());
+                }
+            }
+        }
+        return "";
+    }
+
+    private static final class AnnotatedMethod {
+
+        private final ExecutableElement mMethod;
+        private final String mAnnotationName;
+
+        private AnnotatedMethod(ExecutableElement method, String annotationName) {
+            mMethod = method;
+            mAnnotationName = annotationName;
+        }
+    }
+}